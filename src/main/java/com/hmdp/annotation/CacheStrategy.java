@@ -0,0 +1,22 @@
+package com.hmdp.annotation;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: @HmCached 使用的缓存策略，分别对应 CacheClientUtils 中的三种查询方式
+ * @date 2023/3/24 10:00
+ */
+public enum CacheStrategy {
+    /**
+     * 缓存空值解决缓存穿透，进程内合并并发回源
+     */
+    PASS_THROUGH,
+    /**
+     * 在 PASS_THROUGH 的基础上用 Redis 互斥锁保证多个节点只有一个回源
+     */
+    MUTEX,
+    /**
+     * 逻辑过期解决缓存击穿：过期后返回旧值并异步重建，需要提前预热，未预热的 key 返回 null
+     */
+    LOGICAL_EXPIRE
+}
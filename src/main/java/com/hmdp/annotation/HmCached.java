@@ -0,0 +1,42 @@
+package com.hmdp.annotation;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 声明式缓存：方法的返回值按 prefix + key 缓存，查询走 CacheClientUtils（布隆过滤器、一级缓存、请求合并、空值缓存和指标）。
+ * 方法必须返回实体（或实体的 List），不能返回 Result；同一个类内部调用不会经过代理，需要通过注入的代理对象调用
+ * @date 2023/3/24 10:05
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface HmCached {
+    /**
+     * 缓存 key 前缀
+     */
+    String prefix();
+
+    /**
+     * id 的 SpEL 表达式（如 #shop.id），默认取第一个参数
+     */
+    String key() default "";
+
+    CacheStrategy strategy() default CacheStrategy.PASS_THROUGH;
+
+    long ttl() default 30L;
+
+    TimeUnit unit() default TimeUnit.MINUTES;
+
+    /**
+     * 是否开启进程内一级缓存；前缀尚未配置一级缓存时按默认容量开启
+     */
+    boolean l1() default false;
+
+    /**
+     * 方法返回 List 时的元素类型
+     */
+    Class<?> elementType() default Void.class;
+}
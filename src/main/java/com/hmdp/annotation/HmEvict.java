@@ -0,0 +1,24 @@
+package com.hmdp.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 方法正常返回后删除 prefix + key 对应的缓存；处于事务中时在提交后删除
+ * @date 2023/3/24 10:10
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface HmEvict {
+    /**
+     * 缓存 key 前缀
+     */
+    String prefix();
+
+    /**
+     * id 的 SpEL 表达式（如 #shop.id），默认取第一个参数
+     */
+    String key() default "";
+}
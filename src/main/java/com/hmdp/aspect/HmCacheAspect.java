@@ -0,0 +1,125 @@
+package com.hmdp.aspect;
+
+import com.hmdp.annotation.HmCached;
+import com.hmdp.annotation.HmEvict;
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheClientUtils;
+import com.hmdp.utils.LocalCache;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: @HmCached / @HmEvict 的切面：把方法调用交给 CacheClientUtils 的缓存策略，原方法作为回源逻辑
+ * @date 2023/3/24 10:20
+ */
+@Aspect
+@Component
+public class HmCacheAspect {
+    private final SpelExpressionParser parser = new SpelExpressionParser();
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    @Resource
+    private CacheClientUtils cacheClientUtils;
+    @Resource
+    private LocalCache localCache;
+
+    @Around("@annotation(hmCached)")
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Object cached(ProceedingJoinPoint joinPoint, HmCached hmCached) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Class<?> returnType = method.getReturnType();
+        if (Result.class.isAssignableFrom(returnType)) {
+            throw new IllegalStateException("@HmCached 不能用于返回 Result 的方法：" + method);
+        }
+        boolean isList = List.class.isAssignableFrom(returnType);
+        if (isList && hmCached.elementType() == Void.class) {
+            throw new IllegalStateException("@HmCached 用于返回 List 的方法时必须指定 elementType：" + method);
+        }
+        String prefix = hmCached.prefix();
+        if (hmCached.l1() && !localCache.isEnabled(prefix)) {
+            enableLocalCache(prefix);
+        }
+        Object id = resolveId(joinPoint, method, hmCached.key());
+        // List 以数组形式缓存，编解码时能保留元素类型
+        Class type = isList ? Array.newInstance(hmCached.elementType(), 0).getClass() : returnType;
+        Function<Object, Object> dbFallback = key -> {
+            Object value = proceed(joinPoint);
+            return isList && value != null ? ((List<?>) value).toArray((Object[]) Array.newInstance(hmCached.elementType(), 0)) : value;
+        };
+        Long ttl = hmCached.ttl();
+        TimeUnit unit = hmCached.unit();
+        Object value;
+        switch (hmCached.strategy()) {
+            case MUTEX:
+                value = cacheClientUtils.queryWithMutex(prefix, id, type, dbFallback, ttl, unit);
+                break;
+            case LOGICAL_EXPIRE:
+                value = cacheClientUtils.queryWithLogicalExpire(prefix, id, type, dbFallback, ttl, unit);
+                break;
+            default:
+                value = cacheClientUtils.dealWithCacheHotspotInvalid(prefix, id, type, dbFallback, ttl, unit);
+        }
+        return isList && value != null ? Arrays.asList((Object[]) value) : value;
+    }
+
+    @AfterReturning("@annotation(hmEvict)")
+    public void evict(JoinPoint joinPoint, HmEvict hmEvict) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Object id = resolveId(joinPoint, method, hmEvict.key());
+        if (id != null) {
+            cacheClientUtils.delete(hmEvict.prefix() + id);
+        }
+    }
+
+    private Object resolveId(JoinPoint joinPoint, Method method, String key) {
+        Object[] args = joinPoint.getArgs();
+        if (!StringUtils.hasText(key)) {
+            return args.length == 0 ? "" : args[0];
+        }
+        Expression expression = expressions.computeIfAbsent(key, parser::parseExpression);
+        return expression.getValue(new MethodBasedEvaluationContext(joinPoint.getTarget(), method, args, parameterNameDiscoverer));
+    }
+
+    private synchronized void enableLocalCache(String prefix) {
+        if (!localCache.isEnabled(prefix)) {
+            localCache.configure(prefix, CACHE_L1_DEFAULT_MAX_ENTRIES, CACHE_L1_DEFAULT_MAX_BYTES, CACHE_L1_DEFAULT_TTL, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Object proceed(ProceedingJoinPoint joinPoint) {
+        try {
+            return joinPoint.proceed();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.hmdp.config;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.entity.User;
+import com.hmdp.utils.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 多级缓存配置，按 key 前缀声明一级缓存的容量与 TTL，以及缓存值的编解码
+ * @date 2023/3/12 15:40
+ */
+@Configuration
+public class CacheConfig {
+    @Bean
+    public LocalCache localCache() {
+        LocalCache localCache = new LocalCache();
+        // 商铺详情：热点集中在几千个 id 上
+        localCache.configure(CACHE_SHOP_KEY, CACHE_SHOP_L1_MAX_ENTRIES, CACHE_SHOP_L1_MAX_BYTES, CACHE_SHOP_L1_TTL, TimeUnit.SECONDS);
+        return localCache;
+    }
+
+    /**
+     * 热点 key 探测与短 TTL 本地副本，作用于所有经过 CacheClientUtils 的读取
+     */
+    @Bean
+    public HotKeyCache hotKeyCache() {
+        SlidingWindowSketch sketch = new SlidingWindowSketch(HOT_KEY_SKETCH_WIDTH, HOT_KEY_WINDOW_SLOTS, HOT_KEY_SLOT_MILLIS);
+        return new HotKeyCache(sketch, HOT_KEY_SAMPLE_RATE, HOT_KEY_THRESHOLD, HOT_KEY_CAPACITY, HOT_KEY_LOCAL_TTL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 自适应 TTL：按访问量缩放并加随机抖动；访问量统计所有读取（含一级缓存命中），窗口与采样比例同热点探测
+     */
+    @Bean
+    public TtlPolicies ttlPolicies() {
+        SlidingWindowSketch sketch = new SlidingWindowSketch(HOT_KEY_SKETCH_WIDTH, HOT_KEY_WINDOW_SLOTS, HOT_KEY_SLOT_MILLIS);
+        TtlPolicies ttlPolicies = new TtlPolicies(sketch, HOT_KEY_SAMPLE_RATE);
+        for (String keyPrefix : new String[]{CACHE_SHOP_KEY, CACHE_BLOG_KEY, CACHE_USER_KEY}) {
+            ttlPolicies.register(keyPrefix, CACHE_TTL_JITTER_RATIO, CACHE_TTL_MIN_FACTOR, CACHE_TTL_MAX_FACTOR, CACHE_TTL_HOT_READS);
+        }
+        return ttlPolicies;
+    }
+
+    /**
+     * 逻辑过期缓存的概率提前刷新，按前缀开启
+     */
+    @Bean
+    public EarlyRefreshPolicies earlyRefreshPolicies() {
+        return new EarlyRefreshPolicies()
+                .register(CACHE_SHOP_KEY, CACHE_SHOP_EARLY_REFRESH_BETA);
+    }
+
+    /**
+     * Redis 存储布局：hmdp.cache.hash-buckets 中列出的前缀按 id 分桶存入 hash，其余前缀每个 key 一个 String
+     */
+    @Bean
+    public CacheLayouts cacheLayouts(@Value("${hmdp.cache.hash-buckets:}") String[] hashBucketPrefixes) {
+        CacheLayouts cacheLayouts = new CacheLayouts();
+        for (String keyPrefix : hashBucketPrefixes) {
+            if (!keyPrefix.trim().isEmpty()) {
+                cacheLayouts.register(keyPrefix.trim(), CACHE_HASH_BUCKET_SIZE);
+            }
+        }
+        return cacheLayouts;
+    }
+
+    /**
+     * 缓存编解码：binary（默认）或 json。binary 可以读取旧的 json 数据，切换时无需清空缓存
+     */
+    @Bean
+    public CacheCodecs cacheCodecs(@Value("${hmdp.cache.codec:binary}") String codec) {
+        CacheCodec defaultCodec = "json".equalsIgnoreCase(codec) ? new JsonCacheCodec() : binaryCacheCodec();
+        return new CacheCodecs(defaultCodec);
+    }
+
+    /**
+     * 各实体的二进制结构，字段编号一经使用不可修改或复用；新增字段使用新的编号
+     */
+    public static BinaryCacheCodec binaryCacheCodec() {
+        return new BinaryCacheCodec()
+                .register(BinarySchema.builder(Shop.class, Shop::new)
+                        .longField(1, Shop::getId, Shop::setId)
+                        .stringField(2, Shop::getName, Shop::setName)
+                        .longField(3, Shop::getTypeId, Shop::setTypeId)
+                        .stringField(4, Shop::getImages, Shop::setImages)
+                        .stringField(5, Shop::getArea, Shop::setArea)
+                        .stringField(6, Shop::getAddress, Shop::setAddress)
+                        .doubleField(7, Shop::getX, Shop::setX)
+                        .doubleField(8, Shop::getY, Shop::setY)
+                        .longField(9, Shop::getAvgPrice, Shop::setAvgPrice)
+                        .intField(10, Shop::getSold, Shop::setSold)
+                        .intField(11, Shop::getComments, Shop::setComments)
+                        .intField(12, Shop::getScore, Shop::setScore)
+                        .stringField(13, Shop::getOpenHours, Shop::setOpenHours)
+                        .dateTimeField(14, Shop::getCreateTime, Shop::setCreateTime)
+                        .dateTimeField(15, Shop::getUpdateTime, Shop::setUpdateTime)
+                        .build())
+                // icon、name、isLike 与当前请求相关，不写入缓存
+                .register(BinarySchema.builder(Blog.class, Blog::new)
+                        .longField(1, Blog::getId, Blog::setId)
+                        .longField(2, Blog::getShopId, Blog::setShopId)
+                        .longField(3, Blog::getUserId, Blog::setUserId)
+                        .stringField(4, Blog::getTitle, Blog::setTitle)
+                        .stringField(5, Blog::getImages, Blog::setImages)
+                        .stringField(6, Blog::getContent, Blog::setContent)
+                        .intField(7, Blog::getLiked, Blog::setLiked)
+                        .intField(8, Blog::getComments, Blog::setComments)
+                        .dateTimeField(9, Blog::getCreateTime, Blog::setCreateTime)
+                        .dateTimeField(10, Blog::getUpdateTime, Blog::setUpdateTime)
+                        .build())
+                .register(BinarySchema.builder(User.class, User::new)
+                        .longField(1, User::getId, User::setId)
+                        // 手机号、密码不写入缓存（读取方只用到 UserDTO 的字段），编号 2、3 已废弃，不可复用
+                        .stringField(4, User::getNickName, User::setNickName)
+                        .stringField(5, User::getIcon, User::setIcon)
+                        .dateTimeField(6, User::getCreateTime, User::setCreateTime)
+                        .dateTimeField(7, User::getUpdateTime, User::setUpdateTime)
+                        .build())
+                .register(BinarySchema.builder(ShopType.class, ShopType::new)
+                        .longField(1, ShopType::getId, ShopType::setId)
+                        .stringField(2, ShopType::getName, ShopType::setName)
+                        .stringField(3, ShopType::getIcon, ShopType::setIcon)
+                        .intField(4, ShopType::getSort, ShopType::setSort)
+                        .dateTimeField(5, ShopType::getCreateTime, ShopType::setCreateTime)
+                        .dateTimeField(6, ShopType::getUpdateTime, ShopType::setUpdateTime)
+                        .build());
+    }
+}
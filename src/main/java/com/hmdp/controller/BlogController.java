@@ -6,13 +6,17 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.service.IBlogService;
 import com.hmdp.service.impl.BlogServiceImpl;
+import com.hmdp.utils.EntityVersions;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.annotation.Resource;
 import java.util.List;
 
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_KEY;
+
 /**
  * <p>
  * 前端控制器
@@ -27,6 +31,8 @@ public class BlogController {
 
     @Resource
     private BlogServiceImpl blogService;
+    @Resource
+    private EntityVersions entityVersions;
 
     @PostMapping
     public Result saveBlog(@RequestBody Blog blog) {
@@ -63,7 +69,12 @@ public class BlogController {
     }
 
     @GetMapping("/{id}")
-    public Result queryById(@PathVariable("id") Long id) {
+    public Result queryById(@PathVariable("id") Long id, WebRequest webRequest) {
+        // 响应中包含当前用户是否点赞，ETag 需要区分用户；版本号未变化时直接返回 304
+        UserDTO user = UserHolder.getUser();
+        if (webRequest.checkNotModified(entityVersions.etag(CACHE_BLOG_KEY + id, user == null ? null : user.getId()))) {
+            return null;
+        }
         return blogService.queryById(id);
     }
 
@@ -0,0 +1,118 @@
+package com.hmdp.controller;
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheInvalidator;
+import com.hmdp.utils.CacheLayouts;
+import com.hmdp.utils.CacheMetrics;
+import com.hmdp.utils.CacheRebuildScheduler;
+import com.hmdp.utils.CacheWarmer;
+import com.hmdp.utils.HotKeyCache;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopGeoLoader;
+import com.hmdp.utils.ShopTextIndex;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 缓存运行指标，供运维查看
+ * @date 2023/3/18 11:20
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheStatsController {
+    @Resource
+    private CacheMetrics cacheMetrics;
+    @Resource
+    private HotKeyCache hotKeyCache;
+    @Resource
+    private CacheRebuildScheduler cacheRebuildScheduler;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+    @Resource
+    private CacheWarmer cacheWarmer;
+    @Resource
+    private CacheLayouts cacheLayouts;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+    @Resource
+    private ShopGeoLoader shopGeoLoader;
+    @Resource
+    private ShopTextIndex shopTextIndex;
+
+    /**
+     * 按 key 前缀统计的缓存指标：l1Hit、hotHit、redisHit、miss、dbLoad、earlyRefresh、lateRefresh
+     */
+    @GetMapping("/stats")
+    public Result stats() {
+        return Result.ok(cacheMetrics.snapshot());
+    }
+
+    /**
+     * 当前热点 key：窗口内估计访问量、晋升以来的读取次数与本地副本命中率
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(hotKeyCache.snapshot());
+    }
+
+    /**
+     * 缓存重建调度器：队列深度、去重与拒绝次数、排队与执行耗时
+     */
+    @GetMapping("/rebuild")
+    public Result rebuild() {
+        return Result.ok(cacheRebuildScheduler.stats());
+    }
+
+    /**
+     * 缓存失效管道：待处理 key 数、批次数与失败次数
+     */
+    @GetMapping("/invalidation")
+    public Result invalidation() {
+        return Result.ok(cacheInvalidator.stats());
+    }
+
+    /**
+     * hash 分桶存储：各前缀的桶大小、Redis 的 listpack 编码限制与超过值长度限制的写入次数
+     */
+    @GetMapping("/layouts")
+    public Result layouts() {
+        return Result.ok(cacheLayouts.stats());
+    }
+
+    /**
+     * 启动预热进度
+     */
+    @GetMapping("/warm-up")
+    public Result warmUp() {
+        return Result.ok(cacheWarmer.progress());
+    }
+
+    /**
+     * 本地 GEO 索引状态与各类型店铺数
+     */
+    @GetMapping("/geo-index")
+    public Result geoIndex() {
+        return Result.ok(shopGeoIndex.stats());
+    }
+
+    /**
+     * Redis GEO 集合的加载次数与最近一次校验结果
+     */
+    @GetMapping("/geo-sync")
+    public Result geoSync() {
+        return Result.ok(shopGeoLoader.stats());
+    }
+
+    /**
+     * 本地店铺名称索引状态
+     */
+    @GetMapping("/search-index")
+    public Result searchIndex() {
+        return Result.ok(shopTextIndex.stats());
+    }
+}
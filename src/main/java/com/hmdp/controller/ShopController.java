@@ -1,17 +1,20 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.EntityVersions;
+import com.hmdp.utils.ResponseCache;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 import java.util.concurrent.TimeUnit;
 
@@ -35,6 +38,10 @@ public class ShopController {
     public IShopService shopService;
     @Resource
     public StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ResponseCache responseCache;
+    @Resource
+    private EntityVersions entityVersions;
 
     /**
      * 根据id查询商铺信息
@@ -42,8 +49,13 @@ public class ShopController {
      * @return 商铺详情数据
      */
     @GetMapping("/{id}")
-    public Result queryShopById(@PathVariable("id") Long id) {
-        return shopService.queryById(id);
+    public void queryShopById(@PathVariable("id") Long id, HttpServletRequest request, HttpServletResponse response, WebRequest webRequest) throws IOException {
+        // 版本号未变化时直接返回 304
+        if (webRequest.checkNotModified(entityVersions.etag(CACHE_SHOP_KEY + id, null))) {
+            return;
+        }
+        // 直接输出缓存的响应字节，未命中时查询并缓存
+        responseCache.write(CACHE_SHOP_KEY + id, request, response, () -> shopService.queryById(id));
     }
 
     /**
@@ -53,10 +65,8 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库，返回店铺id
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -75,6 +85,7 @@ public class ShopController {
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
      * @param current 页码
+     * @param lastId 上一页最后一个商铺的 id，传入时按 id 向后翻页（不按坐标查询时有效）
      * @return 商铺列表
      */
     @GetMapping("/of/type")
@@ -82,29 +93,38 @@ public class ShopController {
             @RequestParam("typeId") Integer typeId,
             @RequestParam(value = "current", defaultValue = "1") Integer current,
             @RequestParam(value = "x", required = false) Double x,
-            @RequestParam(value = "y", required = false) Double y
-
+            @RequestParam(value = "y", required = false) Double y,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "lastId", required = false) Long lastId
     ) {
-        return shopService.queryShopByTypeId(typeId, current, x, y);
+        // 传入 cursor（首页传空字符串）时按游标翻页，返回下一页的游标；否则按 current 页码分页
+        return shopService.queryShopByTypeId(typeId, current, x, y, cursor, lastId);
 
     }
 
+    /**
+     * 商铺名称联想
+     * @param prefix 名称前缀
+     * @return 名称以 prefix 开头、评分最高的若干商铺的 id 与名称
+     */
+    @GetMapping("/suggest")
+    public Result suggest(@RequestParam(value = "prefix", required = false) String prefix) {
+        return shopService.suggest(prefix);
+    }
+
     /**
      * 根据商铺名称关键字分页查询商铺信息
      * @param name 商铺名称关键字
      * @param current 页码
+     * @param lastId 上一页最后一个商铺的 id，传入时按 id 向后翻页（只对按 id 排序的数据库查询有效）
      * @return 商铺列表
      */
     @GetMapping("/of/name")
     public Result queryShopByName(
             @RequestParam(value = "name", required = false) String name,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "lastId", required = false) Long lastId
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryShopByName(name, current, lastId);
     }
 }
@@ -6,12 +6,18 @@ import cn.hutool.json.JSONUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.EntityVersions;
+import com.hmdp.utils.ResponseCache;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -34,11 +40,19 @@ public class ShopTypeController {
     private IShopTypeService typeService;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ResponseCache responseCache;
+    @Resource
+    private EntityVersions entityVersions;
 
     @GetMapping("list")
-    public Result queryTypeList() {
-        return typeService.usingListToQueryByCacheOrderByAscSort();
-
+    public void queryTypeList(HttpServletRequest request, HttpServletResponse response, WebRequest webRequest) throws IOException {
+        // 版本号未变化时直接返回 304
+        if (webRequest.checkNotModified(entityVersions.etag(CACHE_SHOP_TYPE, null))) {
+            return;
+        }
+        // 直接输出缓存的响应字节，未命中时查询并缓存
+        responseCache.write(CACHE_SHOP_TYPE, request, response, typeService::usingListToQueryByCacheOrderByAscSort);
     }
     // 使用 String
 
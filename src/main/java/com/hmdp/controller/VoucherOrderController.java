@@ -3,6 +3,7 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.impl.VoucherOrderServiceImpl;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -28,4 +29,20 @@ public class VoucherOrderController {
 
         return voucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 订单消费者：stream 长度、待确认条数，以及各消费者的处理量、最近一批的条数与延迟
+     */
+    @GetMapping("consumers")
+    public Result consumers() {
+        return Result.ok(voucherOrderService.consumerStats());
+    }
+
+    /**
+     * 本节点的售罄标记与直接拒绝的请求数
+     */
+    @GetMapping("sold-out")
+    public Result soldOut() {
+        return Result.ok(voucherOrderService.soldOutStats());
+    }
 }
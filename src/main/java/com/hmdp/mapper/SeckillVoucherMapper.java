@@ -2,6 +2,12 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.SeckillVoucher;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
 
 /**
  * <p>
@@ -13,4 +19,20 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface SeckillVoucherMapper extends BaseMapper<SeckillVoucher> {
 
+    /**
+     * 流式读取尚未结束的秒杀券，用于启动预热（需在事务中遍历游标）
+     * @return 秒杀券游标
+     */
+    @Select("SELECT * FROM tb_seckill_voucher WHERE end_time > NOW()")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    Cursor<SeckillVoucher> scanActive();
+
+    /**
+     * 一次扣减 count 个库存，库存不足 count 时不扣减
+     * @param voucherId 秒杀券 id
+     * @param count 扣减数量
+     * @return 更新的行数，0 表示库存不足
+     */
+    @Update("UPDATE tb_seckill_voucher SET stock = stock - #{count} WHERE voucher_id = #{voucherId} AND stock >= #{count}")
+    int decreaseStock(@Param("voucherId") Long voucherId, @Param("count") int count);
 }
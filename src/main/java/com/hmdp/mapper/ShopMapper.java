@@ -2,6 +2,15 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
@@ -13,4 +22,51 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface ShopMapper extends BaseMapper<Shop> {
 
+    /**
+     * 流式扫描全部id（MySQL 需要 fetchSize = Integer.MIN_VALUE 才会逐行返回）
+     * @param handler 逐行回调
+     */
+    @Select("SELECT id FROM tb_shop")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    void scanIds(ResultHandler<Long> handler);
+
+    /**
+     * 流式读取全部店铺，用于启动预热（需在事务中遍历游标）
+     * @return 店铺游标
+     */
+    @Select("SELECT * FROM tb_shop")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    Cursor<Shop> scanAll();
+
+    /**
+     * 流式读取全部店铺的坐标（只含 id、type_id、x、y），用于构建本地 GEO 索引（需在事务中遍历游标）
+     * @return 店铺游标
+     */
+    @Select("SELECT id, type_id, x, y FROM tb_shop")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    Cursor<Shop> scanLocations();
+
+    /**
+     * 流式读取指定类型店铺的坐标（需在事务中遍历游标）
+     * @param typeId 店铺类型
+     * @return 店铺游标
+     */
+    @Select("SELECT id, type_id, x, y FROM tb_shop WHERE type_id = #{typeId}")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    Cursor<Shop> scanLocationsByType(@Param("typeId") Long typeId);
+
+    /**
+     * 按类型统计有坐标的店铺数，用于校验 Redis GEO 集合
+     * @return 每行包含 typeId 与 total
+     */
+    @Select("SELECT type_id AS typeId, COUNT(*) AS total FROM tb_shop WHERE x IS NOT NULL AND y IS NOT NULL GROUP BY type_id")
+    List<Map<String, Object>> countLocationsByType();
+
+    /**
+     * 流式读取全部店铺的名称、商圈与排序字段，用于构建本地文本索引（需在事务中遍历游标）
+     * @return 店铺游标
+     */
+    @Select("SELECT id, name, area, score, comments FROM tb_shop")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    Cursor<Shop> scanTexts();
 }
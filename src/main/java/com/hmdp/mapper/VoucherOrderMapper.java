@@ -2,6 +2,10 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +17,12 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
 
+    /**
+     * 一条多行 INSERT 写入一批订单；任意一行违反主键或 (user_id, voucher_id) 唯一索引时整条语句失败
+     * @param orders 订单（id、userId、voucherId）
+     * @return 插入的行数
+     */
+    @Insert("<script>INSERT INTO tb_voucher_order (id, user_id, voucher_id) VALUES " +
+            "<foreach collection='orders' item='o' separator=','>(#{o.id}, #{o.userId}, #{o.voucherId})</foreach></script>")
+    int insertBatch(@Param("orders") List<VoucherOrder> orders);
 }
@@ -16,6 +16,8 @@ public interface IBlogService extends IService<Blog> {
 
     Result queryById(Long id);
 
+    Blog getByIdWithCache(Long id);
+
     Result likeBlog(Long id);
 
     Result queryHotBlog(Integer current);
@@ -16,7 +16,15 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    Shop getByIdWithCache(Long id);
+
     Result update(Shop shop);
 
-    Result queryShopByTypeId(Integer typeId, Integer current, Double x, Double y);
+    Result saveShop(Shop shop);
+
+    Result queryShopByTypeId(Integer typeId, Integer current, Double x, Double y, String cursor, Long lastId);
+
+    Result queryShopByName(String name, Integer current, Long lastId);
+
+    Result suggest(String prefix);
 }
@@ -27,6 +27,8 @@ public interface IUserService extends IService<User> {
 
     Result queryUserById(Long userId);
 
+    User getByIdWithCache(Long userId);
+
     Result sign();
 
     Result signCount();
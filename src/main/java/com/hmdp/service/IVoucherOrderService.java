@@ -4,6 +4,9 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * <p>
  *  服务类
@@ -21,4 +24,25 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
 
     void createVoucherOrder(VoucherOrder voucherOrder);
+
+    /**
+     * @description: 在一个事务中写入一批订单：一条多行 INSERT，每个优惠券一次扣减库存；任意一条失败时整批回滚
+     * @param: [voucherOrders]
+     * @return: void
+     */
+    void createVoucherOrders(List<VoucherOrder> voucherOrders);
+
+    /**
+     * @description: 订单消费者组的积压与各消费者的处理量、延迟
+     * @param: []
+     * @return: java.util.Map<java.lang.String,java.lang.Object>
+     */
+    Map<String, Object> consumerStats();
+
+    /**
+     * @description: 本节点的售罄标记与直接拒绝的请求数
+     * @param: []
+     * @return: java.util.Map<java.lang.String,java.lang.Object>
+     */
+    Map<String, Object> soldOutStats();
 }
@@ -5,6 +5,8 @@ import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.annotation.HmCached;
+import com.hmdp.annotation.HmEvict;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
@@ -13,20 +15,26 @@ import com.hmdp.entity.ScrollResult;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
+import com.hmdp.utils.CacheClientUtils;
+import com.hmdp.utils.IdBloomFilters;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
-import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -46,10 +54,15 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private BlogServiceImpl blogService;
     @Resource
     private FollowServiceImpl followService;
+    @Resource
+    private IdBloomFilters idBloomFilters;
+    @Resource
+    private CacheClientUtils cacheClientUtils;
 
     @Override
     public Result queryById(Long id) {
-        Blog blog = getById(id);
+        // 通过代理对象调用，缓存切面才会生效；每次得到的都是新解码的对象，可以放心填充用户信息
+        Blog blog = blogService.getByIdWithCache(id);
         if (blog == null) {
             return Result.fail("笔记不存在！");
         }
@@ -59,6 +72,12 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(blog);
     }
 
+    @Override
+    @HmCached(prefix = CACHE_BLOG_KEY, ttl = CACHE_BLOG_TTL)
+    public Blog getByIdWithCache(Long id) {
+        return getById(id);
+    }
+
     private void isBlogLike(Blog blog) {
         UserDTO user = UserHolder.getUser();
         if (user == null) {
@@ -85,6 +104,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             //保存用户到set集合
             if (isSaveSuccess) {
                 stringRedisTemplate.opsForSet().add(key, userId.toString());
+                cacheClientUtils.delete(CACHE_BLOG_KEY + id);
             }
 
         } else {
@@ -92,6 +112,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             boolean isSaveSuccess = update().setSql("liked = liked-1").eq("id", id).update();
             if (isSaveSuccess) {
                 stringRedisTemplate.opsForSet().remove(key, userId.toString());
+                cacheClientUtils.delete(CACHE_BLOG_KEY + id);
             }
 
         }
@@ -142,6 +163,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     }
 
     @Override
+    @HmEvict(prefix = CACHE_BLOG_KEY, key = "#blog.id")
     public Result saveBlog(Blog blog) {
         // 获取登录用户
         UserDTO user = UserHolder.getUser();
@@ -151,6 +173,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (BooleanUtil.isFalse(isSucceed)) {
             return Result.fail("发布失败～");
         }
+        // 记录到布隆过滤器；之前可能缓存的空值由 @HmEvict 删除
+        idBloomFilters.put(CACHE_BLOG_KEY, blog.getId());
         //查询粉丝
         List<Follow> followList = followService.lambdaQuery().eq(Follow::getFollowUserId, user.getId()).list();
         if (followList.isEmpty() || followList == null) {
@@ -179,12 +203,12 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (tupleSet.isEmpty() || tupleSet == null) {
             return Result.ok();
         }
-        ArrayList<Object> ids = new ArrayList<>(tupleSet.size());
+        ArrayList<Long> ids = new ArrayList<>(tupleSet.size());
         long minTime = 0;
         int offsetNumber = 1;
         for (ZSetOperations.TypedTuple<String> tuple : tupleSet) {
             String idStr = tuple.getValue();
-            ids.add(idStr);
+            ids.add(Long.valueOf(idStr));
             long time = tuple.getScore().longValue();
             if (time == minTime) {
                 offsetNumber++;
@@ -196,14 +220,13 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         }
 
         // 3. 解析数据：blogId、lastId、offset
-        // 4. 根据 ID 查询 Blog
-        String blogIdStr = StrUtil.join(", ", ids);
-        List<Blog> blogList = lambdaQuery().in(Blog::getId, ids).last("ORDER BY FIELD(id, " + blogIdStr + ")").list();
-        for (Blog blog : blogList) {
-            // 完善 Blog 数据：查询并且设置与 Blog 有关的用户信息，以及 Blog 是否被该用户点赞
-            queryBlogWithUserInfo(blog);
-            isBlogLike(blog);
-        }
+        // 4. 根据 ID 批量查询 Blog（先查缓存，未命中的一次 IN 查询）
+        List<Blog> blogList = new ArrayList<>(cacheClientUtils.getAll(CACHE_BLOG_KEY, ids, Blog.class,
+                blogIds -> listByIds(blogIds).stream().collect(Collectors.toMap(Blog::getId, Function.identity())),
+                CACHE_BLOG_TTL, TimeUnit.MINUTES).values());
+        // 完善 Blog 数据：批量查询并且设置与 Blog 有关的用户信息，以及 Blog 是否被该用户点赞
+        queryBlogWithUserInfo(blogList);
+        isBlogLike(blogList);
 
         // 5. 封装并返回
         ScrollResult scrollResult = new ScrollResult();
@@ -214,6 +237,48 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
     }
 
+    /**
+     * @description: 批量设置 Blog 的用户信息，用户从缓存批量读取
+     * @param: [blogList]
+     * @return: void
+     */
+    private void queryBlogWithUserInfo(List<Blog> blogList) {
+        Set<Long> userIds = blogList.stream().map(Blog::getUserId).collect(Collectors.toSet());
+        Map<Long, User> userMap = cacheClientUtils.getAll(CACHE_USER_KEY, userIds, User.class,
+                ids -> userService.listByIds(ids).stream().collect(Collectors.toMap(User::getId, Function.identity())),
+                CACHE_USER_TTL, TimeUnit.MINUTES);
+        for (Blog blog : blogList) {
+            User user = userMap.get(blog.getUserId());
+            if (user != null) {
+                blog.setIcon(user.getIcon());
+                blog.setName(user.getNickName());
+            }
+        }
+    }
+
+    /**
+     * @description: 批量判断当前用户是否点赞，使用 pipeline 一次往返
+     * @param: [blogList]
+     * @return: void
+     */
+    private void isBlogLike(List<Blog> blogList) {
+        UserDTO user = UserHolder.getUser();
+        if (user == null || blogList.isEmpty()) {
+            return;
+        }
+        RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+        byte[] member = serializer.serialize(user.getId().toString());
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Blog blog : blogList) {
+                connection.zSetCommands().zScore(serializer.serialize(BLOG_LIKED_KEY + blog.getId()), member);
+            }
+            return null;
+        });
+        for (int i = 0; i < blogList.size(); i++) {
+            blogList.get(i).setIsLike(scores.get(i) != null);
+        }
+    }
+
     private void queryBlogWithUserInfo(Blog blog) {
         Long userId = blog.getUserId();
         User user = userService.getById(userId);
@@ -7,8 +7,11 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Follow;
+import com.hmdp.entity.User;
 import com.hmdp.mapper.FollowMapper;
 import com.hmdp.service.IFollowService;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClientUtils;
 import com.hmdp.utils.UserHolder;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -17,8 +20,13 @@ import javax.annotation.Resource;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.CACHE_USER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_TTL;
+
 /**
  * <p>
  * 服务实现类
@@ -32,6 +40,10 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private IUserService userService;
+    @Resource
+    private CacheClientUtils cacheClientUtils;
 
     @Override
     public Result isFollowed(Long followUserId) {
@@ -84,7 +96,12 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
             // 无交集
             return Result.ok(Collections.emptyList());
         }
-        List<UserDTO> userDTOList = listByIds(userIdSet)
+        // 批量查询用户（先查缓存，未命中的一次 IN 查询）
+        List<Long> userIds = userIdSet.stream().map(Long::valueOf).collect(Collectors.toList());
+        List<UserDTO> userDTOList = cacheClientUtils.getAll(CACHE_USER_KEY, userIds, User.class,
+                        ids -> userService.listByIds(ids).stream().collect(Collectors.toMap(User::getId, Function.identity())),
+                        CACHE_USER_TTL, TimeUnit.MINUTES)
+                .values()
                 .stream()
                 .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
                 .collect(Collectors.toList());
@@ -1,18 +1,27 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.ObjectUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.extension.conditions.query.LambdaQueryChainWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.annotation.HmCached;
+import com.hmdp.annotation.HmEvict;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopSuggestDTO;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.hmdp.utils.CacheClientUtils;
-import com.hmdp.utils.RedisData;
+import com.hmdp.utils.GeoGridIndex;
+import com.hmdp.utils.IdBloomFilters;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopGeoLoader;
+import com.hmdp.utils.ShopGeoWindows;
+import com.hmdp.utils.ShopSuggestIndex;
+import com.hmdp.utils.ShopTextIndex;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
@@ -23,14 +32,17 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 import static com.hmdp.utils.SystemConstants.DEFAULT_PAGE_SIZE;
+import static com.hmdp.utils.SystemConstants.MAX_PAGE_SIZE;
+import static com.hmdp.utils.SystemConstants.SHOP_GEO_MIN_RADIUS;
+import static com.hmdp.utils.SystemConstants.SHOP_GEO_RADIUS_GROWTH;
 
 /**
  * <p>
@@ -43,263 +55,242 @@ import static com.hmdp.utils.SystemConstants.DEFAULT_PAGE_SIZE;
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
     @Resource
     public IShopService shopService;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
     @Resource
     private CacheClientUtils cacheClientUtils;
+    @Resource
+    private IdBloomFilters idBloomFilters;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+    @Resource
+    private ShopGeoWindows shopGeoWindows;
+    @Resource
+    private ShopGeoLoader shopGeoLoader;
+    @Resource
+    private ShopTextIndex shopTextIndex;
+    @Resource
+    private ShopSuggestIndex shopSuggestIndex;
+    @Value("${hmdp.geo.max-radius:5000}")
+    private double maxRadius;
 
     @Override
     public Result queryById(Long id) {
-        //缓存穿透
-        Shop shop = cacheClientUtils.dealWithCacheHotspotInvalid(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        // 互斥锁解决缓存击穿
-        //Shop shop = queryWithMutex(id);
-        //逻辑过期解决缓存击穿
-        //Shop shop = queryWithLogicalExpire(id);
+        // 通过代理对象调用，缓存切面才会生效
+        Shop shop = shopService.getByIdWithCache(id);
         if (shop == null) {
             return Result.fail("店铺不存在");
         }
         return Result.ok(shop);
     }
 
+    /**
+     * @description: 查询店铺（缓存空值解决缓存穿透；需要解决缓存击穿时可改用 MUTEX 或 LOGICAL_EXPIRE 策略）
+     * @param: [id]
+     * @return: com.hmdp.entity.Shop
+     */
+    @Override
+    @HmCached(prefix = CACHE_SHOP_KEY, ttl = CACHE_SHOP_TTL, l1 = true)
+    public Shop getByIdWithCache(Long id) {
+        return getById(id);
+    }
+
     /**
      * @description: 对热点数据进行预热
      * @param: [id, expireSeconds]
      * @return: void
      */
     public void saveShopToRedis(long id, Long expireSeconds) {
-        //查询店铺数据
+        //查询店铺数据（记录耗时），封装逻辑过期时间并写入redis
+        long begin = System.currentTimeMillis();
         Shop shop = getById(id);
-
-        //封装逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        //写入redis
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_TYPE + id, JSONUtil.toJsonStr(redisData));
-    }
-
-    /**
-     * @description: 使用互斥锁查询
-     * @param: [id]
-     * @return: Shop
-     */
-    private Shop queryWithMutex(Long id) {
-        String key = CACHE_SHOP_KEY + id;
-        // 1. 从 Redis 中查询店铺缓存；
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        // 2. 若 Redis 中存在，则将其转换为 Java 对象后返回；
-        if (StrUtil.isNotBlank(shopJson)) {
-            Shop shop = JSONUtil.toBean(shopJson, Shop.class);
-            return shop;
-        }
-        //判断命中的是否为空值
-        if (shopJson != null) {
-            //返回一个错误信息
-            return null;
-        }
-
-        //未命中获取互斥锁
-        String lockKey = "Lock:shop:" + id;
-        Shop shop = null;
-        try {
-            boolean tryLockFlag = tryLock(lockKey);
-            //判断是否成功
-            if (!tryLockFlag) {
-                //失败休眠，并重试
-                Thread.sleep(50);
-                //使用循环重试
-                queryWithMutex(id);
-
-            }
-            //成功
-            // 3. 若 Redis 中不存在，则根据 id 从数据库中查询；
-            shop = shopService.getById(id);
-
-            // 4. 若 数据库 中不存在，则报错；
-            if (shop == null) {
-                //将空值写入redis
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                return null;
-            }
-            // 5. 若 数据库 中存在，则将其返回并存入 Redis 缓存中。
-            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            // 释放锁
-            unlock(lockKey);
-        }
-
-        return shop;
+        cacheClientUtils.setWithLogicalExpire(CACHE_SHOP_KEY + id, shop, expireSeconds, TimeUnit.SECONDS, System.currentTimeMillis() - begin);
     }
 
     @Override
     @Transactional
+    @HmEvict(prefix = CACHE_SHOP_KEY, key = "#shop.id")
     public Result update(Shop shop) {
         Long id = shop.getId();
         if (id == null) {
             return Result.fail("店铺id不能为空");
         }
-        String key = CACHE_SHOP_KEY + id;
-        //1. 更新数据库
+        // 更新数据库；缓存由 @HmEvict 在事务提交后删除，并广播给其他节点删除一级缓存
+        Shop old = lambdaQuery().select(Shop::getTypeId).eq(Shop::getId, id).one();
         updateById(shop);
-        //  2. 删除缓存
-        stringRedisTemplate.delete(key);
+        // 提交后按最新的类型和坐标同步 GEO 集合，类型变化时从旧类型的集合中删除
+        shopGeoLoader.syncAfterCommit(id, old == null ? null : old.getTypeId());
         return Result.ok();
     }
 
     @Override
-    public Result queryShopByTypeId(Integer typeId, Integer current, Double x, Double y) {
-        // 1. 判断是否需要根据坐标查询
+    @HmEvict(prefix = CACHE_SHOP_KEY, key = "#shop.id")
+    public Result saveShop(Shop shop) {
+        // 1. 写入数据库
+        save(shop);
+        // 2. 记录到布隆过滤器；之前可能缓存的空值由 @HmEvict 删除
+        idBloomFilters.put(CACHE_SHOP_KEY, shop.getId());
+        // 3. 写入 GEO 集合
+        shopGeoLoader.syncAfterCommit(shop.getId(), null);
+        return Result.ok(shop.getId());
+    }
+
+    @Override
+    public Result queryShopByTypeId(Integer typeId, Integer current, Double x, Double y, String cursor, Long lastId) {
+        // 1. 判断是否需要根据坐标查询；不需要时按 id 分页查询数据库，走 (type_id, id) 索引
         if (ObjectUtil.isNull(x) || ObjectUtil.isNull(y)) {
-            return Result.ok(lambdaQuery().eq(Shop::getTypeId, typeId).page(new Page<>(current, DEFAULT_PAGE_SIZE)).getRecords());
+            return Result.ok(pageById(lambdaQuery().eq(Shop::getTypeId, typeId), current, DEFAULT_PAGE_SIZE, lastId));
         }
 
-        // 2. 计算分页参数
-        int start = (current - 1) * DEFAULT_PAGE_SIZE;
-        int end = current * DEFAULT_PAGE_SIZE;
-
-        // 3. 查询 Redis，按照距离排序 --> GEOSEARCH key BYLONLAT x y BYRADIUS 5000 mi WITHDISTANCE
-        String key = SHOP_GEO_KEY + typeId;
-        GeoResults<RedisGeoCommands.GeoLocation<String>> geoResults = stringRedisTemplate.opsForGeo().search(key, GeoReference.fromCoordinate(x, y), new Distance(5000), RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(end));
-        if (ObjectUtil.isNull(geoResults)) {
-            return Result.ok(Collections.emptyList());
+        // 2. 确定结果窗口所在的网格：游标翻页沿用首页的网格，保证用户位置小幅移动时顺序不变
+        boolean useCursor = cursor != null;
+        ShopGeoWindows.Cursor after = null;
+        if (useCursor && !cursor.isEmpty()) {
+            after = ShopGeoWindows.decodeCursor(cursor);
+            if (after == null) {
+                return Result.fail("游标无效");
+            }
         }
+        long cellX = after == null ? ShopGeoWindows.quantize(x) : after.getCellX();
+        long cellY = after == null ? ShopGeoWindows.quantize(y) : after.getCellY();
+        double centerX = ShopGeoWindows.center(cellX);
+        double centerY = ShopGeoWindows.center(cellY);
+        IntFunction<ShopGeoWindows.Window> searcher = limit -> searchNearby(typeId, centerX, centerY, limit);
 
-        // 4. 解析出 ID，根据 ID 查询商店
-        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> content = geoResults.getContent();
-        if (content.size() <= start) {
-            return Result.ok(Collections.emptyList());
+        // 3. 从缓存的窗口中定位本页：页码分页按下标，游标分页二分查找上一页最后一条之后的位置；窗口不够时扩大
+        int start = useCursor ? 0 : (current - 1) * DEFAULT_PAGE_SIZE;
+        ShopGeoWindows.Window window = shopGeoWindows.get(typeId, cellX, cellY, start + DEFAULT_PAGE_SIZE, searcher);
+        if (after != null) {
+            start = window.positionAfter(after.getDistance(), after.getId());
+            while (start + DEFAULT_PAGE_SIZE > window.size() && !window.isComplete()) {
+                window = shopGeoWindows.get(typeId, cellX, cellY, start + DEFAULT_PAGE_SIZE, searcher);
+                start = window.positionAfter(after.getDistance(), after.getId());
+            }
         }
-        List<Long> shopIdList = new ArrayList<>(content.size());
-        Map<String, Distance> distanceMap = new HashMap<>(content.size());
-        content.stream().skip(start).forEach(result -> {
-            String shopIdStr = result.getContent().getName();
-            shopIdList.add(Long.valueOf(shopIdStr));
-            Distance distance = result.getDistance();
-            distanceMap.put(shopIdStr, distance);
-        });
-
-        // 5. 根据 shopId 查询 Shop
-        String shopIdStrWithComma = StrUtil.join(", ", shopIdList);
-        List<Shop> shopList = lambdaQuery().in(Shop::getId, shopIdList).last("ORDER BY FIELD(id, " + shopIdStrWithComma + ")").list();
-        for (Shop shop : shopList) {
-            shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
+        int end = Math.min(start + DEFAULT_PAGE_SIZE, window.size());
+        List<Long> shopIdList = new ArrayList<>(DEFAULT_PAGE_SIZE);
+        for (int i = start; i < end; i++) {
+            shopIdList.add(window.idAt(i));
         }
 
-        // 6. Return ShopList
-        return Result.ok(shopList);
+        // 4. 根据 shopId 批量查询 Shop（先查缓存，未命中的一次 IN 查询），结果按 id 顺序即距离顺序；距离按用户的实际坐标计算
+        Map<Long, Shop> shopMap = cacheClientUtils.getAll(CACHE_SHOP_KEY, shopIdList, Shop.class, this::loadShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        List<Shop> shopList = new ArrayList<>(shopMap.size());
+        for (Shop shop : shopMap.values()) {
+            if (shop.getX() != null && shop.getY() != null) {
+                shop.setDistance(GeoGridIndex.distance(x, y, shop.getX(), shop.getY()));
+            }
+            shopList.add(shop);
+        }
+        if (!useCursor) {
+            return Result.ok(shopList);
+        }
 
+        // 5. 游标分页：窗口之后还有结果时返回下一页的游标
+        CursorResult result = new CursorResult();
+        result.setList(shopList);
+        result.setRadius(window.getRadius());
+        if (end > start && (end < window.size() || !window.isComplete())) {
+            result.setCursor(ShopGeoWindows.encodeCursor(cellX, cellY, window.distanceAt(end - 1), window.idAt(end - 1)));
+        }
+        return Result.ok(result);
     }
 
-    /**
-     * @description: 获取互斥锁
-     * @param: [key]
-     * @return: boolean
-     */
-    private boolean tryLock(String key) {
-        //获取互斥锁
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(flag);
+    @Override
+    public Result queryShopByName(String name, Integer current, Long lastId) {
+        // 1. 没有关键字或本地索引不可用时分页查询数据库。注意两者的匹配范围不同：索引同时匹配名称与商圈，
+        // 数据库回退只对名称做 LIKE，索引不可用期间按商圈才能搜到的店铺不会出现在结果中
+        ShopTextIndex.SearchResult result = StrUtil.isBlank(name) ? null
+                : shopTextIndex.search(name, (current - 1) * MAX_PAGE_SIZE, MAX_PAGE_SIZE, lastId);
+        if (result == null) {
+            return Result.ok(pageById(lambdaQuery().like(StrUtil.isNotBlank(name), Shop::getName, name), current, MAX_PAGE_SIZE, lastId));
+        }
+        // 2. 排序和分页已在索引中完成，只批量查询本页的店铺（先查缓存）
+        Map<Long, Shop> shopMap = cacheClientUtils.getAll(CACHE_SHOP_KEY, result.getIds(), Shop.class, this::loadShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        return Result.ok(new ArrayList<>(shopMap.values()), result.getTotal());
+    }
 
+    @Override
+    public Result suggest(String prefix) {
+        if (StrUtil.isBlank(prefix)) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 联想只查本地前缀树，索引加载完成前返回空列表，不回退到数据库
+        List<ShopSuggestDTO> suggestions = shopSuggestIndex.suggest(prefix);
+        return Result.ok(suggestions == null ? Collections.emptyList() : suggestions);
     }
 
     /**
-     * @description: 删除互斥锁
-     * @param: [key]
-     * @return: void
+     * @description: k 近邻查询最近的 limit 个店铺：半径从 SHOP_GEO_MIN_RADIUS 开始按倍数扩大，结果足够或达到最大半径时停止。
+     * 本地 GEO 索引的扫描本身从近到远、结果足够即停止，直接以最大半径查询一次，再换算成扩大过程中实际需要的半径；
+     * 索引不可用时对 Redis 逐次扩大半径查询
+     * @param: [typeId, x, y, limit]
+     * @return: com.hmdp.utils.ShopGeoWindows.Window
      */
-    private void unlock(String key) {
-        //删除互斥锁
-        stringRedisTemplate.delete(key);
+    private ShopGeoWindows.Window searchNearby(Integer typeId, double x, double y, int limit) {
+        List<GeoGridIndex.Hit> hits = shopGeoIndex.search(typeId, x, y, maxRadius, limit);
+        if (hits != null) {
+            double radius = maxRadius;
+            if (hits.size() >= limit) {
+                double farthest = hits.get(hits.size() - 1).getDistance();
+                radius = SHOP_GEO_MIN_RADIUS;
+                while (radius < farthest && radius < maxRadius) {
+                    radius = Math.min(radius * SHOP_GEO_RADIUS_GROWTH, maxRadius);
+                }
+            }
+            return new ShopGeoWindows.Window(hits, radius, hits.size() < limit);
+        }
+        double radius = Math.min(SHOP_GEO_MIN_RADIUS, maxRadius);
+        while (true) {
+            hits = searchRedisGeo(typeId, x, y, radius, limit);
+            if (hits.size() >= limit || radius >= maxRadius) {
+                return new ShopGeoWindows.Window(hits, radius, hits.size() < limit);
+            }
+            radius = Math.min(radius * SHOP_GEO_RADIUS_GROWTH, maxRadius);
+        }
     }
 
     /**
-     * @description: 使用逻辑过期解决
-     * @param: [id]
-     * @return: Shop
+     * @description: 查询 Redis，按照距离排序 --> GEOSEARCH key FROMLONLAT x y BYRADIUS radius m ASC COUNT limit WITHDIST
+     * @param: [typeId, x, y, radiusMeters, limit]
+     * @return: java.util.List<com.hmdp.utils.GeoGridIndex.Hit>
      */
-    public Shop queryWithLogicalExpire(long id) {
-        String key = CACHE_SHOP_KEY + id;
-        // 1. 从 Redis 中查询店铺缓存；
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        // 2. 若 Redis中不存在，直接返回；
-        if (StrUtil.isBlank(shopJson)) {
-            return null;
-        }
-        // 3. 命中，需要把接送反序列化为对象
-        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-        Shop shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        //判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            //未过期，直接返回店铺信息
-            return shop;
-        }
-        //已过期，需要缓存重建
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        // 5.1 获取到互斥锁
-        // 开启独立线程：根据 id 查询数据库，将数据写入到 Redis，并且设置逻辑过期时间。
-        // 此处必须进行 DoubleCheck
-        // 多线程并发下，若线程1 和 线程2都到达这一步，线程1 拿到锁，进行操作后释放锁；线程2 拿到锁后会再次进行查询数据库、写入到 Redis 中等操作。
-        shopJson = stringRedisTemplate.opsForValue().get(key);
-        if (StrUtil.isBlank(shopJson)) {
-            return null;
+    private List<GeoGridIndex.Hit> searchRedisGeo(Integer typeId, Double x, Double y, double radiusMeters, int limit) {
+        String key = SHOP_GEO_KEY + typeId;
+        GeoResults<RedisGeoCommands.GeoLocation<String>> geoResults = stringRedisTemplate.opsForGeo().search(key, GeoReference.fromCoordinate(x, y), new Distance(radiusMeters), RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().sortAscending().limit(limit));
+        if (ObjectUtil.isNull(geoResults)) {
+            return Collections.emptyList();
         }
-        if (isLock) {
-            // 再次检测
-
-            shopJson = stringRedisTemplate.opsForValue().get(key);
-            redisData = JSONUtil.toBean(shopJson, RedisData.class);
-            shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-            expireTime = redisData.getExpireTime();
-
-            //开启独立线程
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    // 重建缓存
-                    this.saveShopToRedis(id, 20L);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    unlock(lockKey);
-                }
-            });
+        List<GeoGridIndex.Hit> hits = new ArrayList<>(geoResults.getContent().size());
+        for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : geoResults.getContent()) {
+            hits.add(new GeoGridIndex.Hit(Long.parseLong(result.getContent().getName()), result.getDistance().getValue()));
         }
-
-        return shop;
+        return hits;
     }
 
-    public Shop queryWithPassThrough(long id) {
-        String key = CACHE_SHOP_KEY + id;
-        // 1. 从 Redis 中查询店铺缓存；
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        // 2. 若 Redis 中存在，则将其转换为 Java 对象后返回；
-        if (StrUtil.isNotBlank(shopJson)) {
-            Shop shop = JSONUtil.toBean(shopJson, Shop.class);
-            return shop;
-        }
-        //判断命中的是否为空值
-        if (shopJson != null) {
-            return null;
+    /**
+     * @description: 按 id 升序分页，不查询总数：传入 lastId 时从 id > lastId 处向后取 size 条（keyset 分页，耗时与页码无关），
+     * 否则按 current 页码 OFFSET 分页，兼容旧客户端
+     * @param: [query, current, size, lastId]
+     * @return: java.util.List<com.hmdp.entity.Shop>
+     */
+    private List<Shop> pageById(LambdaQueryChainWrapper<Shop> query, Integer current, int size, Long lastId) {
+        query.orderByAsc(Shop::getId);
+        if (lastId != null) {
+            return query.gt(Shop::getId, lastId).page(new Page<>(1, size, false)).getRecords();
         }
-        // 3. 若 Redis 中不存在，则根据 id 从数据库中查询；
-        Shop shop = shopService.getById(id);
+        return query.page(new Page<>(current, size, false)).getRecords();
+    }
 
-        // 4. 若 数据库 中不存在，则报错；
-        if (shop == null) {
-            //将空值写入redis
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-            return null;
-        }
-        // 5. 若 数据库 中存在，则将其返回并存入 Redis 缓存中。
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        return shop;
+    /**
+     * @description: 根据 id 批量查询商铺，用于批量缓存回源
+     * @param: [ids]
+     * @return: java.util.Map<java.lang.Long,com.hmdp.entity.Shop>
+     */
+    private Map<Long, Shop> loadShopMap(Collection<Long> ids) {
+        return listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
     }
 
 }
@@ -4,12 +4,15 @@ import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.util.RandomUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.annotation.HmCached;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClientUtils;
+import com.hmdp.utils.IdBloomFilters;
 import com.hmdp.utils.RegexUtils;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
@@ -43,6 +46,13 @@ import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IUserService {
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private IdBloomFilters idBloomFilters;
+    @Autowired
+    private CacheClientUtils cacheClientUtils;
+    // 代理对象，内部调用带缓存注解的方法时使用
+    @Autowired
+    private IUserService userService;
 
     /**
      * @description: 发送验证码
@@ -135,8 +145,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
      */
     @Override
     public Result queryUserById(Long userId) {
-        // 查询详情
-        User user = getById(userId);
+        // 通过代理对象调用，缓存切面才会生效（布隆过滤器在缓存层判断）
+        User user = userService.getByIdWithCache(userId);
         if (user == null) {
             return Result.ok();
         }
@@ -145,6 +155,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok(userDTO);
     }
 
+    @Override
+    @HmCached(prefix = CACHE_USER_KEY, ttl = CACHE_USER_TTL)
+    public User getByIdWithCache(Long userId) {
+        return getById(userId);
+    }
+
     @Override
     public Result sign() {
         // 1. 获取当前登录用户
@@ -221,6 +237,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         user.setNickName(USER_NICK_NAME_PREFIX + RandomUtil.randomString(10));
         // 保存用户
         save(user);
+        // 记录到布隆过滤器，并删除之前可能缓存的空值（私有方法不经过代理，不能用 @HmEvict）
+        idBloomFilters.put(CACHE_USER_KEY, user.getId());
+        cacheClientUtils.delete(CACHE_USER_KEY + user.getId());
         return user;
 
     }
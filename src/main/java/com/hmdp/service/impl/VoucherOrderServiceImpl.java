@@ -1,33 +1,38 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SoldOutRegistry;
+import com.hmdp.utils.StreamConsumerGroup;
 import com.hmdp.utils.UserHolder;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.redis.connection.stream.*;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import java.time.Duration;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_GROUP;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
 
 /**
  * <p>
@@ -38,16 +43,13 @@ import java.util.concurrent.Executors;
  * @since 2021-12-22
  */
 @Service
-@Transactional
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
     // Lua 脚本
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
-    // 异步处理线程池
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
 
     static {
         SECKILL_SCRIPT = new DefaultRedisScript();
-        SECKILL_SCRIPT.setLocation(new ClassPathResource("Unlock.lua"));
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
         SECKILL_SCRIPT.setResultType(Long.class);
     }
 
@@ -58,190 +60,182 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private StringRedisTemplate stringRedisTemplate;
     @Resource
-    private RedissonClient redissonClient;
+    private SoldOutRegistry soldOutRegistry;
+    // 代理对象（注入的是本类的事务代理），消费线程通过它调用事务方法
     @Resource
-    // 代理对象
     private IVoucherOrderService currentProxy;
-    // 阻塞队列：当一个线程尝试从队列中获取元素时：若队列中没有元素线程就会被阻塞，直到队列中有元素时线程才会被唤醒并且去获取元素。
-    private BlockingQueue<VoucherOrder> orderTasks = new ArrayBlockingQueue<>(1024 * 1024);
 
-    // 在当前类初始完毕后执行 VoucherOrderHandler 中的 run 方法
+    // 本节点的订单消费者数（0 表示 CPU 核数）、每批读取条数与节点名（为空时取 主机名:端口）
+    @Value("${hmdp.seckill.consumers:0}")
+    private int consumers;
+    @Value("${hmdp.seckill.batch-size:50}")
+    private int batchSize;
+    @Value("${hmdp.seckill.node-name:}")
+    private String nodeName;
+    @Value("${server.port:8080}")
+    private int serverPort;
+
+    private StreamConsumerGroup orderConsumers;
+
+    // 在当前类初始完毕后创建消费者组并启动订单消费者
     @PostConstruct
     public void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        int size = consumers > 0 ? consumers : Runtime.getRuntime().availableProcessors();
+        orderConsumers = new StreamConsumerGroup(stringRedisTemplate, SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, resolveNodeName(),
+                size, batchSize, this::handleVoucherOrders);
+        orderConsumers.start();
     }
 
-    private void handleVoucherOrder(VoucherOrder voucherOrder) {
-        Long userId = voucherOrder.getUserId();
-        RLock lock = redissonClient.getLock("lock:order:" + userId);
-        boolean isLocked = lock.tryLock();
-        if (!isLocked) {
-            log.error("不允许重复下单！");
-            return;
+    @PreDestroy
+    public void destroy() {
+        if (orderConsumers != null) {
+            orderConsumers.stop();
+        }
+    }
+
+    @Override
+    public Map<String, Object> consumerStats() {
+        return orderConsumers.stats();
+    }
+
+    /**
+     * 处理一批订单消息，返回处理完成（可以确认）的消息 id：先整批写入，失败时（重复订单、重复投递或库存不足）逐条处理，
+     * 单条失败不影响同批的其他消息
+     */
+    private Set<RecordId> handleVoucherOrders(List<MapRecord<String, Object, Object>> records) {
+        Set<RecordId> done = new HashSet<>(records.size());
+        Map<RecordId, VoucherOrder> orders = new LinkedHashMap<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            try {
+                orders.put(record.getId(), toVoucherOrder(record));
+            } catch (Exception e) {
+                // 无法解析的消息重试也不会成功，记录后确认
+                log.error("订单消息无法解析，消息 id = " + record.getId(), e);
+                done.add(record.getId());
+            }
+        }
+        if (orders.isEmpty()) {
+            return done;
+        }
+        try {
+            // 该方法非主线程调用，通过代理对象调用才能开启事务
+            currentProxy.createVoucherOrders(new ArrayList<>(orders.values()));
+            done.addAll(orders.keySet());
+            return done;
+        } catch (Exception e) {
+            log.warn("批量写入 " + orders.size() + " 个订单失败，逐条处理：" + e.getMessage());
+        }
+        orders.forEach((id, voucherOrder) -> {
+            try {
+                currentProxy.createVoucherOrder(voucherOrder);
+                done.add(id);
+            } catch (Exception e) {
+                log.error("订单处理异常，消息 id = " + id, e);
+            }
+        });
+        return done;
+    }
+
+    /**
+     * 订单 id 由消息中的时间戳与序列号拼接（旧消息直接带有 id）
+     */
+    private static VoucherOrder toVoucherOrder(MapRecord<String, Object, Object> record) {
+        Map<Object, Object> value = record.getValue();
+        VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
+        if (voucherOrder.getId() == null) {
+            voucherOrder.setId(RedisIdWorker.compose(Long.parseLong(value.get("ts").toString()), Long.parseLong(value.get("seq").toString())));
+        }
+        return voucherOrder;
+    }
+
+    private String resolveNodeName() {
+        if (StrUtil.isNotBlank(nodeName)) {
+            return nodeName;
         }
         try {
-            // 该方法非主线程调用，代理对象需要在主线程中获取。
-            currentProxy.createVoucherOrder(voucherOrder);
-        } finally {
-            lock.unlock();
+            return InetAddress.getLocalHost().getHostName() + ":" + serverPort;
+        } catch (UnknownHostException e) {
+            return ManagementFactory.getRuntimeMXBean().getName() + ":" + serverPort;
         }
     }
 
     @Override
     public Result seckillVoucher(Long voucherId) {
+        //0. 本节点已知售罄，直接返回，不访问 Redis
+        if (soldOutRegistry.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
         //获取用户
         Long userId = UserHolder.getUser().getId();
-        long orderId = redisIdWorker.nextId("order");
-        //1. 执行Lua脚本 判断资格和库存
-        Long executeResult = stringRedisTemplate.execute(SECKILL_SCRIPT, Collections.emptyList(), voucherId.toString(), userId.toString(), String.valueOf(orderId)
-
-        );
-
-        //判断结果是否为0
-        int result = executeResult.intValue();
-        // 不为0没有购买资格
-        if (result != 0) {
-            return Result.fail(result == 1 ? "库存不足" : "不能重复下单");
+        //1. 执行Lua脚本 判断资格和库存；订单序列号由脚本在下单成功后自增，被拒绝的请求不消耗序列号
+        LocalDateTime now = LocalDateTime.now();
+        long timestamp = redisIdWorker.timestamp(now);
+        Long executeResult = stringRedisTemplate.execute(SECKILL_SCRIPT, Collections.singletonList(redisIdWorker.counterKey("order", now)),
+                voucherId.toString(), userId.toString(), String.valueOf(timestamp));
+
+        //判断结果：大于 0 为订单序列号，-1 库存不足，-2 重复下单，-3 秒杀券不存在
+        long result = executeResult;
+        if (result == -3) {
+            // 库存未写入 Redis（秒杀券不存在或尚未发布），不能当作售罄广播
+            return Result.fail("秒杀券不存在");
+        }
+        if (result == -1) {
+            // 售罄：标记并广播，之后的请求在各节点直接拒绝
+            soldOutRegistry.markSoldOut(voucherId);
+            return Result.fail("库存不足");
+        }
+        if (result < 0) {
+            return Result.fail("不能重复下单");
         }
 
-//        //6.创建订单
-//        VoucherOrder voucherOrder = new VoucherOrder();
-//        // 6.1.订单id
-//        long orderId = redisIdWorker.nextId("order");
-//        voucherOrder.setId(orderId);
-//        // 6.2.用户id
-//
-//        voucherOrder.setUserId(userId);
-//        // 6.3.代金券id
-//        voucherOrder.setVoucherId(voucherId);
-//        //放入阻塞队列
-//        orderTasks.add(voucherOrder);
+        // 返回订单号（告诉用户下单成功，业务结束；由订单消费者异步写入数据库）
+        return Result.ok(RedisIdWorker.compose(timestamp, result));
 
-        //返回订单id
-        // 4. 获取代理对象
-        currentProxy = (IVoucherOrderService) AopContext.currentProxy();
+    }
 
-        // 5. 返回订单号（告诉用户下单成功，业务结束；执行异步下单操作数据库）
-        return Result.ok(orderId);
+    @Override
+    public Map<String, Object> soldOutStats() {
+        return soldOutRegistry.stats();
+    }
 
+    @Override
+    @Transactional
+    public void createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        // 1. 一条多行 INSERT 写入整批订单，重复订单（一人一单）与重复投递由唯一索引拒绝，整批失败后逐条处理
+        getBaseMapper().insertBatch(voucherOrders);
+        // 2. 每个优惠券只扣减一次库存；按 id 顺序更新，多个消费者并发时加锁顺序一致，避免死锁
+        Map<Long, Integer> counts = new TreeMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            counts.merge(voucherOrder.getVoucherId(), 1, Integer::sum);
+        }
+        counts.forEach((voucherId, count) -> {
+            if (seckillVoucherService.getBaseMapper().decreaseStock(voucherId, count) == 0) {
+                throw new IllegalStateException("库存不足，voucherId = " + voucherId + "，需要扣减 " + count);
+            }
+        });
     }
 
     @Override
     @Transactional
     public void createVoucherOrder(VoucherOrder voucherOrder) {
-        // 一人一单（根据 优惠券id 和 用户id 查询订单；存在，则直接返回）
-        Long userId = UserHolder.getUser().getId();
-        //
-        Long voucherId = voucherOrder.getVoucherId();
-
-        int count = query().eq("user_id", userId).eq("voucher_id", voucherId).count();
-        if (count > 0) {
-            log.error("不可重复下单！");
+        // 一人一单由唯一索引 (user_id, voucher_id) 保证：重复下单或消息重复投递时插入失败，直接返回
+        try {
+            save(voucherOrder);
+        } catch (DuplicateKeyException e) {
+            log.error("不可重复下单！orderId = " + voucherOrder.getId());
             return;
         }
 
         //5，扣减库存
-        boolean success = seckillVoucherService.update().setSql("stock= stock -1").eq("voucher_id", voucherId).gt("stock", 0).update(); //where id = ? and stock > 0
+        boolean success = seckillVoucherService.update().setSql("stock= stock -1").eq("voucher_id", voucherOrder.getVoucherId()).gt("stock", 0).update(); //where id = ? and stock > 0
         if (!success) {
-            //扣减库存
-            log.error("库存不足！");
-            return;
-        }
-
-        boolean isSaved = save(voucherOrder);
-        if (!isSaved) {
-            log.error("失败");
-            return;
+            // 库存不足，撤销已插入的订单
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            log.error("库存不足！orderId = " + voucherOrder.getId());
         }
 
     }
 
-    private void handlePendingList() {
-        String queueName = "stream.orders";
-        String groupName = "orderGroup";
-        String consumerName = "consumerOne";
-
-        while (true) {
-            try {
-                // 1. 获取队列中的订单信息
-                // XREAD GROUP orderGroup consumerOne COUNT 1 BLOCK 2000 STREAMS stream.orders >
-                // 队列 stream.orders、消费者组 orderGroup、消费者 consumerOne、每次读 1 条消息、阻塞时间 2s、从下一个未消费的消息开始。
-                List<MapRecord<String, Object, Object>> readingList = stringRedisTemplate.opsForStream().read(
-                        Consumer.from(groupName, consumerName),
-                        StreamReadOptions.empty().count(1),
-                        StreamOffset.create(queueName, ReadOffset.from("0"))
-                );
-
-                //2. 判断消息是否获取成功
-                if (readingList.isEmpty() || readingList == null) {
-                    // 获取失败 pending-list 中没有异常消息，结束循环
-                    break;
-                }
-                //3. 如果成功，可以下单
-                // 3. 解析消息中的订单信息并下单
-                MapRecord<String, Object, Object> record = readingList.get(0);
-                Map<Object, Object> recordValue = record.getValue();
-                VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(recordValue, new VoucherOrder(), true);
-                handleVoucherOrder(voucherOrder);
-
-                //4. ACK确认
-                stringRedisTemplate.opsForStream().acknowledge(queueName, groupName, record.getId());
-
-            } catch (Exception e) {
-                log.error("订单处理异常（pending-list）", e);
-
-                try {
-                    // 稍微休眠一下再进行循环
-                    Thread.sleep(20);
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                }
-            }
-        }
-    }
-
-    public class VoucherOrderHandler implements Runnable {
-        String queueName = "stream.orders";
-        String groupName = "orderGroup";
-        String consumerName = "consumerOne";
-
-        @Override
-        public void run() {
-            while (true) {
-                try {
-                    // 1. 获取队列中的订单信息
-                    // XREAD GROUP orderGroup consumerOne COUNT 1 BLOCK 2000 STREAMS stream.orders >
-                    // 队列 stream.orders、消费者组 orderGroup、消费者 consumerOne、每次读 1 条消息、阻塞时间 2s、从下一个未消费的消息开始。
-                    List<MapRecord<String, Object, Object>> readingList =
-                            stringRedisTemplate.opsForStream()
-                                    .read(
-                                            Consumer.from(groupName, consumerName),
-                                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                                            StreamOffset.create(queueName, ReadOffset.lastConsumed()));
-                    //2. 判断消息是否获取成功
-                    if (readingList.isEmpty() || readingList == null) {
-                        // 获取失败 pending-list 中没有异常消息，结束循环
-                        continue;
-                    }
-                    //3. 如果成功，可以下单
-                    // 3. 解析消息中的订单信息并下单
-                    MapRecord<String, Object, Object> record = readingList.get(0);
-                    Map<Object, Object> recordValue = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(recordValue, new VoucherOrder(), true);
-                    //3. 如果成功，可以下单
-                    handleVoucherOrder(voucherOrder);
-
-                    //4. ACK确认
-                    stringRedisTemplate.opsForStream().acknowledge(queueName, groupName, record.getId());
-
-                } catch (Exception e) {
-                    log.error("订单处理异常（pending-list）", e);
-                    handlePendingList();
-                }
-            }
-        }
-    }
-
 }
 
 //    @Override
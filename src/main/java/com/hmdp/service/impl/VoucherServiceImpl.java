@@ -1,12 +1,15 @@
 package com.hmdp.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.annotation.HmCached;
+import com.hmdp.annotation.HmEvict;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SoldOutRegistry;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -14,6 +17,8 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.annotation.Resource;
 import java.util.List;
 
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_VOUCHER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_VOUCHER_TTL;
 import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
 
 /**
@@ -28,20 +33,43 @@ import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
 public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> implements IVoucherService {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
 
     @Resource
     private ISeckillVoucherService seckillVoucherService;
+    // 代理对象，内部调用带缓存注解的方法时使用
+    @Resource
+    private IVoucherService voucherService;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        // 查询优惠券信息（带缓存）
+        List<Voucher> vouchers = voucherService.listVoucherOfShop(shopId);
         // 返回结果
         return Result.ok(vouchers);
     }
 
+    /**
+     * @description: 查询店铺的优惠券列表；列表中带有秒杀库存，TTL 较短
+     * @param: [shopId]
+     * @return: java.util.List<com.hmdp.entity.Voucher>
+     */
+    @Override
+    @HmCached(prefix = CACHE_SHOP_VOUCHER_KEY, ttl = CACHE_SHOP_VOUCHER_TTL, elementType = Voucher.class)
+    public List<Voucher> listVoucherOfShop(Long shopId) {
+        return getBaseMapper().queryVoucherOfShop(shopId);
+    }
+
+    @Override
+    @HmEvict(prefix = CACHE_SHOP_VOUCHER_KEY, key = "#voucher.shopId")
+    public void addVoucher(Voucher voucher) {
+        save(voucher);
+    }
+
     @Override
     @Transactional
+    @HmEvict(prefix = CACHE_SHOP_VOUCHER_KEY, key = "#voucher.shopId")
     public void addSeckillVoucher(Voucher voucher) {
         // 保存优惠券
         save(voucher);
@@ -54,5 +82,7 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucherService.save(seckillVoucher);
         // 保存秒杀库存到Redis中
         stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        // 有了库存，清除各节点的售罄标记
+        soldOutRegistry.clear(voucher.getId());
     }
 }
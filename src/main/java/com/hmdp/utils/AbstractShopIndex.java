@@ -0,0 +1,177 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 基于 tb_shop 的本地索引的公共部分：启动后在后台流式读取店铺构建索引；店铺写入后的缓存失效广播（cache:shop:{id}）
+ * 触发从数据库重新读取这些店铺并交给子类增量更新，各节点都据此更新。加载和增量更新在同一个线程中执行，
+ * 保证加载完成后才应用期间发生的修改。索引未就绪时 isReady 返回 false，由调用方回退到原来的查询方式
+ * @date 2023/3/27 15:40
+ */
+@Slf4j
+public abstract class AbstractShopIndex implements ApplicationRunner {
+    @Resource
+    protected ShopMapper shopMapper;
+    @Resource
+    private PlatformTransactionManager transactionManager;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    private final String name;
+    private final Set<Long> pendingIds = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor;
+    private volatile boolean ready;
+
+    protected AbstractShopIndex(String name) {
+        this.name = name;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @description: 是否开启索引
+     * @param: []
+     * @return: boolean
+     */
+    protected abstract boolean isEnabled();
+
+    /**
+     * @description: 打开构建索引所需的店铺游标
+     * @param: []
+     * @return: org.apache.ibatis.cursor.Cursor<com.hmdp.entity.Shop>
+     */
+    protected abstract Cursor<Shop> scan();
+
+    /**
+     * @description: 遍历游标构建完整索引并替换当前索引
+     * @param: [shops]
+     * @return: void
+     */
+    protected abstract void build(Iterable<Shop> shops);
+
+    /**
+     * @description: 增量更新：ids 为发生变化的店铺，shops 为其中仍然存在的店铺的最新数据
+     * @param: [ids, shops]
+     * @return: void
+     */
+    protected abstract void apply(Set<Long> ids, List<Shop> shops);
+
+    /**
+     * @description: 只订阅第一次失效广播：广播在事务提交后发出，此时读取数据库已是最新值，延迟双删的第二次广播不会带来新的修改
+     * @param: []
+     * @return: void
+     */
+    @PostConstruct
+    public void subscribeInvalidation() {
+        if (!isEnabled()) {
+            return;
+        }
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String key = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (key.startsWith(CACHE_SHOP_KEY)) {
+                try {
+                    pendingIds.add(Long.valueOf(key.substring(CACHE_SHOP_KEY.length())));
+                    executor.execute(this::applyPending);
+                } catch (NumberFormatException ignored) {
+                    // 非店铺详情的 key
+                }
+            }
+        }, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (isEnabled()) {
+            executor.execute(this::load);
+        }
+    }
+
+    /**
+     * @description: 索引是否可用
+     * @param: []
+     * @return: boolean
+     */
+    public boolean isReady() {
+        return ready && isEnabled();
+    }
+
+    protected int pendingCount() {
+        return pendingIds.size();
+    }
+
+    private void load() {
+        long begin = System.currentTimeMillis();
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        try {
+            // 在只读事务中遍历游标（事务结束前连接不会归还）
+            template.executeWithoutResult(status -> {
+                try (Cursor<Shop> cursor = scan()) {
+                    build(cursor);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (Exception e) {
+            // 加载失败时一直回退到原来的查询方式
+            log.error("{} 加载失败", name, e);
+            return;
+        }
+        ready = true;
+        log.info("{} 加载完成，耗时 {} ms", name, System.currentTimeMillis() - begin);
+        applyPending();
+    }
+
+    private void applyPending() {
+        if (!ready || pendingIds.isEmpty()) {
+            return;
+        }
+        Set<Long> ids = new HashSet<>(pendingIds);
+        pendingIds.removeAll(ids);
+        List<Shop> shops;
+        try {
+            shops = shopMapper.selectBatchIds(ids);
+        } catch (Exception e) {
+            // 读取失败时放回去，等下一次修改再重试
+            pendingIds.addAll(ids);
+            log.error("{} 更新失败，共 {} 个店铺", name, ids.size(), e);
+            return;
+        }
+        apply(ids, shops);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,345 @@
+package com.hmdp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 实体的紧凑二进制结构描述。每个字段写成「编号 + 类型 + 值」，null 字段不写；
+ * 解码时按编号匹配，遇到未知编号按类型跳过，因此新增或删除字段后新旧版本可以互相读取（字段编号一经使用不可复用）
+ * @date 2023/3/16 15:00
+ */
+public final class BinarySchema<T> {
+    // 字段值的编码类型
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_BYTES = 2;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final Class<T> type;
+    private final Supplier<T> factory;
+    private final Field<T>[] fields;
+    // 按编号索引字段，编号即数组下标
+    private final Field<T>[] fieldsByTag;
+
+    @SuppressWarnings("unchecked")
+    private BinarySchema(Class<T> type, Supplier<T> factory, List<Field<T>> fieldList) {
+        this.type = type;
+        this.factory = factory;
+        this.fields = fieldList.toArray(new Field[0]);
+        int maxTag = 0;
+        for (Field<T> field : fields) {
+            maxTag = Math.max(maxTag, field.tag);
+        }
+        this.fieldsByTag = new Field[maxTag + 1];
+        for (Field<T> field : fields) {
+            if (fieldsByTag[field.tag] != null) {
+                throw new IllegalArgumentException("字段编号重复：" + type.getSimpleName() + "#" + field.tag);
+            }
+            fieldsByTag[field.tag] = field;
+        }
+    }
+
+    public static <T> Builder<T> builder(Class<T> type, Supplier<T> factory) {
+        return new Builder<>(type, factory);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    void write(T value, Writer out) {
+        for (Field<T> field : fields) {
+            Object fieldValue = field.getter.apply(value);
+            if (fieldValue == null) {
+                continue;
+            }
+            out.writeVarint((long) field.tag << 3 | field.kind.wireType);
+            field.kind.write(out, fieldValue);
+        }
+    }
+
+    T read(Reader in) {
+        T value = factory.get();
+        while (in.hasRemaining()) {
+            long key = in.readVarint();
+            int tag = (int) (key >>> 3);
+            int wireType = (int) (key & 0x7);
+            Field<T> field = tag < fieldsByTag.length ? fieldsByTag[tag] : null;
+            if (field == null || field.kind.wireType != wireType) {
+                // 新版本新增的字段或已废弃的字段，直接跳过
+                in.skip(wireType);
+                continue;
+            }
+            field.setter.accept(value, field.kind.read(in));
+        }
+        return value;
+    }
+
+    public static final class Builder<T> {
+        private final Class<T> type;
+        private final Supplier<T> factory;
+        private final List<Field<T>> fields = new ArrayList<>();
+
+        private Builder(Class<T> type, Supplier<T> factory) {
+            this.type = type;
+            this.factory = factory;
+        }
+
+        public Builder<T> longField(int tag, Function<T, Long> getter, BiConsumer<T, Long> setter) {
+            return add(tag, Kind.LONG, getter, setter);
+        }
+
+        public Builder<T> intField(int tag, Function<T, Integer> getter, BiConsumer<T, Integer> setter) {
+            return add(tag, Kind.INT, getter, setter);
+        }
+
+        public Builder<T> doubleField(int tag, Function<T, Double> getter, BiConsumer<T, Double> setter) {
+            return add(tag, Kind.DOUBLE, getter, setter);
+        }
+
+        public Builder<T> boolField(int tag, Function<T, Boolean> getter, BiConsumer<T, Boolean> setter) {
+            return add(tag, Kind.BOOL, getter, setter);
+        }
+
+        public Builder<T> stringField(int tag, Function<T, String> getter, BiConsumer<T, String> setter) {
+            return add(tag, Kind.STRING, getter, setter);
+        }
+
+        public Builder<T> dateTimeField(int tag, Function<T, LocalDateTime> getter, BiConsumer<T, LocalDateTime> setter) {
+            return add(tag, Kind.DATE_TIME, getter, setter);
+        }
+
+        public BinarySchema<T> build() {
+            return new BinarySchema<>(type, factory, fields);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <V> Builder<T> add(int tag, Kind kind, Function<T, V> getter, BiConsumer<T, V> setter) {
+            if (tag <= 0) {
+                throw new IllegalArgumentException("字段编号必须大于 0");
+            }
+            fields.add(new Field<>(tag, kind, (Function<T, Object>) getter, (BiConsumer<T, Object>) setter));
+            return this;
+        }
+    }
+
+    private static final class Field<T> {
+        private final int tag;
+        private final Kind kind;
+        private final Function<T, Object> getter;
+        private final BiConsumer<T, Object> setter;
+
+        Field(int tag, Kind kind, Function<T, Object> getter, BiConsumer<T, Object> setter) {
+            this.tag = tag;
+            this.kind = kind;
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+
+    private enum Kind {
+        LONG(WIRE_VARINT) {
+            void write(Writer out, Object value) {
+                out.writeZigZag((Long) value);
+            }
+
+            Object read(Reader in) {
+                return in.readZigZag();
+            }
+        },
+        INT(WIRE_VARINT) {
+            void write(Writer out, Object value) {
+                out.writeZigZag((Integer) value);
+            }
+
+            Object read(Reader in) {
+                return (int) in.readZigZag();
+            }
+        },
+        BOOL(WIRE_VARINT) {
+            void write(Writer out, Object value) {
+                out.writeVarint((Boolean) value ? 1 : 0);
+            }
+
+            Object read(Reader in) {
+                return in.readVarint() != 0;
+            }
+        },
+        DOUBLE(WIRE_FIXED64) {
+            void write(Writer out, Object value) {
+                out.writeFixed64(Double.doubleToRawLongBits((Double) value));
+            }
+
+            Object read(Reader in) {
+                return Double.longBitsToDouble(in.readFixed64());
+            }
+        },
+        STRING(WIRE_BYTES) {
+            void write(Writer out, Object value) {
+                byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+                out.writeVarint(bytes.length);
+                out.writeBytes(bytes);
+            }
+
+            Object read(Reader in) {
+                return in.readString();
+            }
+        },
+        // 时间存为 epoch 毫秒
+        DATE_TIME(WIRE_VARINT) {
+            void write(Writer out, Object value) {
+                out.writeZigZag(((LocalDateTime) value).atZone(ZONE).toInstant().toEpochMilli());
+            }
+
+            Object read(Reader in) {
+                return LocalDateTime.ofInstant(Instant.ofEpochMilli(in.readZigZag()), ZONE);
+            }
+        };
+
+        private final int wireType;
+
+        Kind(int wireType) {
+            this.wireType = wireType;
+        }
+
+        abstract void write(Writer out, Object value);
+
+        abstract Object read(Reader in);
+    }
+
+    /**
+     * 可扩容的字节写入器
+     */
+    static final class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int initialCapacity) {
+            this.buf = new byte[initialCapacity];
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        void writeZigZag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeFixed64(long value) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buf[pos++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            byte[] out = new byte[pos];
+            System.arraycopy(buf, 0, out, 0, pos);
+            return out;
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                byte[] bigger = new byte[Math.max(buf.length * 2, pos + n)];
+                System.arraycopy(buf, 0, bigger, 0, pos);
+                buf = bigger;
+            }
+        }
+    }
+
+    /**
+     * 字节读取器
+     */
+    static final class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf, int offset) {
+            this.buf = buf;
+            this.pos = offset;
+        }
+
+        int position() {
+            return pos;
+        }
+
+        boolean hasRemaining() {
+            return pos < buf.length;
+        }
+
+        long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buf[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalStateException("varint 格式错误");
+        }
+
+        long readZigZag() {
+            long raw = readVarint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        long readFixed64() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value |= (buf[pos++] & 0xFFL) << (8 * i);
+            }
+            return value;
+        }
+
+        String readString() {
+            int length = (int) readVarint();
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        void skip(int wireType) {
+            switch (wireType) {
+                case WIRE_VARINT:
+                    readVarint();
+                    break;
+                case WIRE_FIXED64:
+                    pos += 8;
+                    break;
+                case WIRE_BYTES:
+                    int length = (int) readVarint();
+                    pos += length;
+                    break;
+                default:
+                    throw new IllegalStateException("未知的字段类型：" + wireType);
+            }
+        }
+    }
+}
@@ -1,19 +1,26 @@
 package com.hmdp.utils;
 
+import cn.hutool.core.thread.ThreadUtil;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
-import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_REPEAT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_LOCK_KEY;
 
 /**
  * @author zjzjhd
@@ -21,143 +28,568 @@ import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
  * @description: TODO
  * @date 2023/2/22 20:41
  */
+@Slf4j
 @Component
 public class CacheClientUtils {
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    // 互斥锁等待的重试次数与间隔
+    private static final int MUTEX_MAX_RETRIES = 20;
+    private static final long MUTEX_RETRY_INTERVAL_MILLIS = 50L;
+    // 空值标记
+    private static final byte[] NULL_VALUE = new byte[0];
+    private final SingleFlight<byte[]> singleFlight = new SingleFlight<>();
     private final StringRedisTemplate stringRedisTemplate;
+    private final LocalCache localCache;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final IdBloomFilters idBloomFilters;
+    private final CacheCodecs cacheCodecs;
+    private final EarlyRefreshPolicies earlyRefreshPolicies;
+    private final CacheMetrics cacheMetrics;
+    private final HotKeyCache hotKeyCache;
+    private final CacheRebuildScheduler rebuildScheduler;
+    private final CacheInvalidator cacheInvalidator;
+    private final TtlPolicies ttlPolicies;
+    private final CacheLayouts cacheLayouts;
 
     // 构造方法注入
-    public CacheClientUtils(StringRedisTemplate stringRedisTemplate) {
+    public CacheClientUtils(StringRedisTemplate stringRedisTemplate, LocalCache localCache, RedisMessageListenerContainer listenerContainer,
+                            IdBloomFilters idBloomFilters, CacheCodecs cacheCodecs, EarlyRefreshPolicies earlyRefreshPolicies,
+                            CacheMetrics cacheMetrics, HotKeyCache hotKeyCache, CacheRebuildScheduler rebuildScheduler,
+                            CacheInvalidator cacheInvalidator, TtlPolicies ttlPolicies, CacheLayouts cacheLayouts) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.localCache = localCache;
+        this.listenerContainer = listenerContainer;
+        this.idBloomFilters = idBloomFilters;
+        this.cacheCodecs = cacheCodecs;
+        this.earlyRefreshPolicies = earlyRefreshPolicies;
+        this.cacheMetrics = cacheMetrics;
+        this.hotKeyCache = hotKeyCache;
+        this.rebuildScheduler = rebuildScheduler;
+        this.cacheInvalidator = cacheInvalidator;
+        this.ttlPolicies = ttlPolicies;
+        this.cacheLayouts = cacheLayouts;
     }
 
     /**
-     * @description: 将任意 Java 对象序列化为 JSON 存储在 String 类型的 Key 中，并且可以设置 TTL 过期时间
+     * @description: 启动时检查 hash 分桶是否在 Redis 的 listpack 编码限制内；无权限执行 CONFIG 时只记录日志
+     * @param: []
+     * @return: void
+     */
+    @PostConstruct
+    public void checkLayouts() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+                cacheLayouts.checkEncodingLimits(connection);
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("读取 Redis hash 编码配置失败，跳过 hash 分桶检查", e);
+        }
+    }
+
+    /**
+     * @description: 订阅缓存失效广播，收到后删除本节点的一级缓存
+     * @param: []
+     * @return: void
+     */
+    @PostConstruct
+    public void subscribeInvalidation() {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String key = new String(message.getBody(), StandardCharsets.UTF_8);
+            localCache.evict(key);
+            hotKeyCache.evict(key);
+        }, Arrays.asList(new ChannelTopic(CACHE_INVALIDATE_CHANNEL), new ChannelTopic(CACHE_INVALIDATE_REPEAT_CHANNEL)));
+    }
+
+    /**
+     * @description: 删除缓存：在事务提交后（无事务时立即）批量删除 Redis 中的 key 与各节点的本地一级缓存
+     * @param: [keys]
+     * @return: void
+     */
+    public void delete(String... keys) {
+        cacheInvalidator.invalidate(keys);
+    }
+
+    /**
+     * @description: 只失效各节点的一级缓存（Redis 中的值已被覆盖时使用）
+     * @param: [key]
+     * @return: void
+     */
+    public void evictLocal(String key) {
+        localCache.evict(key);
+        hotKeyCache.evict(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    /**
+     * @description: 先查本地一级缓存，未命中时若为热点 key 查本地副本，再查 Redis，并把 Redis 的结果放入一级缓存/热点副本
+     * @param: [keyPrefix, key, epoch]
+     * @return: byte[]
+     */
+    private byte[] getCache(String keyPrefix, String key, long epoch) {
+        // 自适应 TTL 的访问量在一级缓存之前统计，一级缓存命中的热门 key 同样计入
+        ttlPolicies.record(key);
+        byte[] value = localCache.get(key);
+        if (value != null) {
+            cacheMetrics.increment(keyPrefix, "l1Hit");
+            return value;
+        }
+        long hotEpoch = hotKeyCache.epoch(key);
+        if (hotKeyCache.record(key)) {
+            value = hotKeyCache.get(key);
+            if (value != null) {
+                cacheMetrics.increment(keyPrefix, "hotHit");
+                return value;
+            }
+        }
+        value = redisGet(key);
+        cacheMetrics.increment(keyPrefix, value != null ? "redisHit" : "miss");
+        localCache.put(key, value, epoch);
+        if (value != null) {
+            hotKeyCache.put(key, value, hotEpoch);
+        }
+        return value;
+    }
+
+    /**
+     * @description: 将任意 Java 对象编码后存储在 String 类型的 Key 中，并且可以设置 TTL 过期时间（按前缀的自适应策略缩放并加抖动）
      * @param: [key, value, time, unit]
      * @return: void
      */
     public void setWithPassThrough(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        redisSet(key, cacheCodecs.of(key).encode(value), time, unit);
     }
+
     /**
-     * @description: 将任意 Java 对象序列化为 JSON 存储在 String 类型的 Key 中，并且可以设置逻辑过期时间，用于处理缓存击穿
-     * @param: [key, value, time, unit] 
+     * @description: 将任意 Java 对象编码后存储在 String 类型的 Key 中，并且可以设置逻辑过期时间（同样经过自适应策略），用于处理缓存击穿
+     * @param: [key, value, time, unit]
      * @return: void
      */
-
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        setWithLogicalExpire(key, value, time, unit, 0L);
+    }
+
+    /**
+     * @description: 写入逻辑过期缓存，同时记录本次重建耗时，供概率提前刷新使用
+     * @param: [key, value, time, unit, rebuildCostMillis]
+     * @return: void
+     */
+    public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit, long rebuildCostMillis) {
+        long expireAt = System.currentTimeMillis() + ttlPolicies.ttlMillis(key, unit.toMillis(time));
+        byte[] bytes = cacheCodecs.of(key).encodeWithExpire(value, expireAt, rebuildCostMillis);
+        CacheLayouts.Slot slot = cacheLayouts.slotOf(key);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            if (slot != null) {
+                cacheLayouts.write(connection, slot, bytes, -1L);
+            } else {
+                connection.stringCommands().set(rawKey(key), bytes);
+            }
+            return null;
+        });
     }
-/**
- * @description:  根据指定的 Key 查询缓存，反序列化为指定类型，利用缓存空值的方式解决缓存穿透问题。
- * @param: [keyPrefix, id, type, dbFallback, time, unit] 
- * @return: R
- */
-public <R, ID> R dealWithCacheHotspotInvalid(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit timeUnit) {
 
-        // 1. 从redis中查询商铺缓存
+    /**
+     * @description: 根据指定的 Key 查询缓存，反序列化为指定类型，利用缓存空值的方式解决缓存穿透问题。
+     * @param: [keyPrefix, id, type, dbFallback, time, unit]
+     * @return: R
+     */
+    public <R, ID> R dealWithCacheHotspotInvalid(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit timeUnit) {
+        // 0. 布隆过滤器判断一定不存在，直接返回
+        if (!idBloomFilters.mightContain(keyPrefix, id)) {
+            return null;
+        }
+        // 1. 从一级缓存、redis中查询商铺缓存
         String key = keyPrefix + id;
-        String json = stringRedisTemplate.opsForValue().get(key);
+        long epoch = localCache.epoch(key);
+        byte[] bytes = getCache(keyPrefix, key, epoch);
         // 2. 判断是否存在
-        if (StrUtil.isNotBlank(json)) {// 3. 存在，直接返回
-            return JSONUtil.toBean(json, type);
+        if (bytes == null) {
+            // 3. 不存在，合并本进程内对同一 key 的并发回源，只有一个线程查询数据库
+            bytes = loadThrough(keyPrefix, id, dbFallback, time, timeUnit, epoch, false);
         }
-        // 4. 判断是否为空值
-        if (json != null) {
+        // 4. 判断是否为空值，不是则反序列化
+        return bytes.length == 0 ? null : cacheCodecs.of(key).decode(bytes, type);
+    }
+
+    /**
+     * @description: 根据指定的 Key 查询缓存，未命中时在进程内合并回源的基础上，再用 Redis 互斥锁保证多个节点之间只有一个节点查询数据库
+     * @param: [keyPrefix, id, type, dbFallback, time, unit]
+     * @return: R
+     */
+    public <R, ID> R queryWithMutex(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit timeUnit) {
+        if (!idBloomFilters.mightContain(keyPrefix, id)) {
             return null;
         }
-        // 5. 不存在，根据id查询数据库
+        String key = keyPrefix + id;
+        long epoch = localCache.epoch(key);
+        byte[] bytes = getCache(keyPrefix, key, epoch);
+        if (bytes == null) {
+            bytes = loadThrough(keyPrefix, id, dbFallback, time, timeUnit, epoch, true);
+        }
+        return bytes.length == 0 ? null : cacheCodecs.of(key).decode(bytes, type);
+    }
+
+    /**
+     * @description: 缓存未命中时回源：同一 key 的并发请求共享一次加载，返回写入缓存的字节（空值为空数组）
+     * @param: [keyPrefix, id, dbFallback, time, timeUnit, epoch, crossNodeMutex]
+     * @return: byte[]
+     */
+    private <R, ID> byte[] loadThrough(String keyPrefix, ID id, Function<ID, R> dbFallback, Long time, TimeUnit timeUnit, long epoch, boolean crossNodeMutex) {
+        String key = keyPrefix + id;
+        return singleFlight.execute(key, () -> {
+            // 再次检测：可能刚有其他线程完成了重建
+            byte[] bytes = redisGet(key);
+            if (bytes != null) {
+                localCache.put(key, bytes, epoch);
+                return bytes;
+            }
+            if (!crossNodeMutex) {
+                return loadFromDb(keyPrefix, id, dbFallback, time, timeUnit, epoch);
+            }
+            String lockKey = CACHE_LOCK_KEY + key;
+            for (int i = 0; i < MUTEX_MAX_RETRIES; i++) {
+                if (tryLock(lockKey)) {
+                    try {
+                        bytes = redisGet(key);
+                        return bytes != null ? bytes : loadFromDb(keyPrefix, id, dbFallback, time, timeUnit, epoch);
+                    } finally {
+                        unLock(lockKey);
+                    }
+                }
+                // 其他节点正在重建，休眠后重新查询缓存
+                ThreadUtil.sleep(MUTEX_RETRY_INTERVAL_MILLIS);
+                bytes = redisGet(key);
+                if (bytes != null) {
+                    localCache.put(key, bytes, epoch);
+                    return bytes;
+                }
+            }
+            // 等待超时（持锁节点异常），直接查询数据库
+            return loadFromDb(keyPrefix, id, dbFallback, time, timeUnit, epoch);
+        });
+    }
+
+    /**
+     * @description: 查询数据库并写入 Redis 与一级缓存，数据不存在时缓存空值
+     * @param: [keyPrefix, id, dbFallback, time, timeUnit, epoch]
+     * @return: byte[]
+     */
+    private <R, ID> byte[] loadFromDb(String keyPrefix, ID id, Function<ID, R> dbFallback, Long time, TimeUnit timeUnit, long epoch) {
+        String key = keyPrefix + id;
+        cacheMetrics.increment(keyPrefix, "dbLoad");
         R r = dbFallback.apply(id);
-        // 6. 不存在，返回错误
-        if (r == null) {
-            stringRedisTemplate.opsForValue().set(key, "", time, timeUnit);
+        // 不存在，缓存空值
+        byte[] bytes = r == null ? NULL_VALUE : cacheCodecs.of(key).encode(r);
+        long ttlMillis = redisSet(key, bytes, time, timeUnit);
+        localCache.put(key, bytes, epoch, ttlMillis);
+        return bytes;
+    }
+
+    /**
+     * @description: 根据指定的 Key 查询缓存，反序列化为指定类型，利用逻辑过期的方式解决缓存击穿问题。
+     * @param: [keyPrefix, id, type, dbFallback, time, unit]
+     * @return: R
+     */
+    @SuppressWarnings("unchecked")
+    public <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 0. 布隆过滤器判断一定不存在，直接返回
+        if (!idBloomFilters.mightContain(keyPrefix, id)) {
             return null;
         }
-        // 7. 存在，存入redis
-        this.setWithPassThrough(key, r, time, timeUnit);
-        return r;
-    }
-/**
- * @description: 根据指定的 Key 查询缓存，反序列化为指定类型，利用逻辑过期的方式解决缓存击穿问题。
- * @param: [keyPrefix, id, type, dbFallback, time, unit] 
- * @return: R
- */
-public <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
-        // 1. 从redis中查询商铺缓存
+        // 1. 从一级缓存、redis中查询商铺缓存
         String key = keyPrefix + id;
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getCache(keyPrefix, key, localCache.epoch(key));
         // 2. 判断是否存在
-        if (StrUtil.isBlank(json)) {
+        if (bytes == null || bytes.length == 0) {
             // 3. 不存在，直接返回
             return null;
         }
-        // 4. 命中，把json反序列化成对象
-        RedisData redisData;
-        redisData = JSONUtil.toBean(json, RedisData.class);
-        JSONObject jsonObject = (JSONObject) redisData.getData();
-        R r = JSONUtil.toBean(jsonObject, type);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        // 5. 判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
+        // 4. 命中，把数据反序列化成对象
+        CacheCodec codec = cacheCodecs.of(key);
+        RedisData redisData = codec.decodeWithExpire(bytes, type);
+        R r = (R) redisData.getData();
+        // 5. 判断是否过期；未过期时按概率决定是否提前刷新
+        long now = System.currentTimeMillis();
+        long expireAt = redisData.expireAtMillis();
+        boolean expired = expireAt <= now;
+        if (!expired && !earlyRefreshPolicies.shouldRefreshEarly(keyPrefix, expireAt, redisData.rebuildCostMillis(), now)) {
             // 5.1 未过期，直接返回店铺信息
             return r;
         }
-        // 5.2 已过期，需要缓存重建
+        // 5.2 已过期（或提前刷新），需要缓存重建；本节点已在重建该 key 时直接返回旧数据
+        if (rebuildScheduler.isPending(key)) {
+            return r;
+        }
 
         // 6. 进行缓存重建
         // 6.1 获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
+        String lockKey = CACHE_LOCK_KEY + key;
         // 6.2 判断是否获取锁成功
         boolean isLock = tryLock(lockKey);
         if (isLock) {
-            // 再次检测
-
-            json = stringRedisTemplate.opsForValue().get(key);
-            redisData = JSONUtil.toBean(json, RedisData.class);
-            jsonObject = (JSONObject) redisData.getData();
-            r = JSONUtil.toBean(jsonObject, type);
-            expireTime = redisData.getExpireTime();
-            //  判断是否过期
-            if (expireTime.isAfter(LocalDateTime.now())) {
-                //  未过期，直接返回店铺信息
-                return r;
-            }
-
-            // 6.3 成功开启新线程执行缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                // 重建缓存,查询数据库
+            // 再次检测：过期时间变了说明其他线程已经完成重建
+            bytes = redisGet(key);
+            if (bytes != null && bytes.length > 0) {
+                redisData = codec.decodeWithExpire(bytes, type);
+                if (redisData.expireAtMillis() != expireAt) {
+                    unLock(lockKey);
+                    return (R) redisData.getData();
+                }
+            }
+
+            // 6.3 成功，交给重建调度器执行缓存重建
+            boolean accepted = rebuildScheduler.submit(key, () -> {
+                // 重建缓存,查询数据库，并记录重建耗时
                 try {
+                    long begin = System.currentTimeMillis();
                     R r1 = dbFallback.apply(id);
-                    this.setWithLogicalExpire(key, r1, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                    // 数据已删除时 r1 为 null，写入 null 标记，之后的读取直接返回 null
+                    this.setWithLogicalExpire(key, r1, time, unit, System.currentTimeMillis() - begin);
+                    // 各节点一级缓存中的旧值随之失效
+                    this.evictLocal(key);
                 } finally {
-                    // 释放所
+                    // 释放锁
                     unLock(lockKey);
                 }
             });
+            if (accepted) {
+                cacheMetrics.increment(keyPrefix, expired ? "lateRefresh" : "earlyRefresh");
+            } else {
+                // 调度器已满或重复提交，释放锁，本次返回旧数据
+                unLock(lockKey);
+            }
         }
 
         return r;
     }
-/**
- * @description: 获取互斥锁
- * @param: [key]
- * @return: boolean
- */
-private boolean tryLock(String key) {
+
+    /**
+     * @description: 批量查询缓存：一次 MGET 读取全部 key，未命中的 id 通过一次批量查询回源，再用一次 pipeline 写回；空值视为命中
+     * @param: [keyPrefix, ids, type, bulkLoader, time, unit]
+     * @return: java.util.Map<ID,R> 按 ids 的顺序返回存在的数据
+     */
+    public <R, ID> Map<ID, R> getAll(String keyPrefix, Collection<ID> ids, Class<R> type, Function<Collection<ID>, Map<ID, R>> bulkLoader, Long time, TimeUnit unit) {
+        Map<ID, R> result = new LinkedHashMap<>(ids.size());
+        if (ids.isEmpty()) {
+            return result;
+        }
+        CacheCodec codec = cacheCodecs.of(keyPrefix);
+        // 1. 布隆过滤器过滤一定不存在的 id，再查一级缓存
+        Map<ID, byte[]> hits = new HashMap<>(ids.size());
+        List<ID> remoteIds = new ArrayList<>(ids.size());
+        List<String> remoteKeys = new ArrayList<>(ids.size());
+        List<Long> epochs = new ArrayList<>(ids.size());
+        List<Long> hotEpochs = new ArrayList<>(ids.size());
+        int hotHits = 0;
+        for (ID id : ids) {
+            if (hits.containsKey(id) || !idBloomFilters.mightContain(keyPrefix, id)) {
+                continue;
+            }
+            String key = keyPrefix + id;
+            ttlPolicies.record(key);
+            long epoch = localCache.epoch(key);
+            byte[] bytes = localCache.get(key);
+            if (bytes != null) {
+                hits.put(id, bytes);
+                continue;
+            }
+            if (hotKeyCache.record(key) && (bytes = hotKeyCache.get(key)) != null) {
+                hits.put(id, bytes);
+                hotHits++;
+                continue;
+            }
+            remoteIds.add(id);
+            remoteKeys.add(key);
+            epochs.add(epoch);
+            hotEpochs.add(hotKeyCache.epoch(key));
+        }
+        cacheMetrics.add(keyPrefix, "l1Hit", hits.size() - hotHits);
+        cacheMetrics.add(keyPrefix, "hotHit", hotHits);
+        // 2. 一次 MGET 查询 Redis
+        List<ID> missIds = new ArrayList<>();
+        if (!remoteKeys.isEmpty()) {
+            List<byte[]> values = redisMultiGet(remoteKeys);
+            for (int i = 0; i < remoteIds.size(); i++) {
+                byte[] bytes = values == null ? null : values.get(i);
+                if (bytes == null) {
+                    missIds.add(remoteIds.get(i));
+                    continue;
+                }
+                hits.put(remoteIds.get(i), bytes);
+                localCache.put(remoteKeys.get(i), bytes, epochs.get(i));
+                hotKeyCache.put(remoteKeys.get(i), bytes, hotEpochs.get(i));
+            }
+            cacheMetrics.add(keyPrefix, "redisHit", remoteIds.size() - missIds.size());
+            cacheMetrics.add(keyPrefix, "miss", missIds.size());
+        }
+        // 3. 未命中的 id 一次批量查询数据库，并通过 pipeline 写回 Redis（不存在的写入空值）
+        Map<ID, R> loaded = missIds.isEmpty() ? Collections.emptyMap() : bulkLoader.apply(missIds);
+        if (!missIds.isEmpty()) {
+            cacheMetrics.increment(keyPrefix, "dbLoad");
+            Map<String, byte[]> toWrite = new LinkedHashMap<>(missIds.size());
+            for (ID id : missIds) {
+                R r = loaded.get(id);
+                toWrite.put(keyPrefix + id, r == null ? NULL_VALUE : codec.encode(r));
+            }
+            writeAll(toWrite, time, unit, false);
+        }
+        // 4. 按传入顺序组装结果
+        for (ID id : ids) {
+            R r = loaded.get(id);
+            if (r == null) {
+                byte[] bytes = hits.get(id);
+                r = bytes == null || bytes.length == 0 ? null : codec.decode(bytes, type);
+            }
+            if (r != null) {
+                result.put(id, r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @description: 批量写入缓存（与 setWithPassThrough 格式相同），已存在（未过期）的 key 不覆盖（SET NX），用于预热：
+     * 读取数据库之后其他节点修改并回填的新值不会被预热读到的旧值覆盖
+     * @param: [values, time, unit]
+     * @return: void
+     */
+    public void setAllIfAbsent(Map<String, ?> values, Long time, TimeUnit unit) {
+        writeAll(encodeAll(values), time, unit, true);
+    }
+
+    private Map<String, byte[]> encodeAll(Map<String, ?> values) {
+        Map<String, byte[]> entries = new LinkedHashMap<>(values.size());
+        values.forEach((key, value) -> entries.put(key, cacheCodecs.of(key).encode(value)));
+        return entries;
+    }
+
+    /**
+     * @description: 使用 pipeline 批量写入缓存（一次网络往返）；onlyIfAbsent 为 true 时不覆盖已存在的 key
+     * @param: [entries, time, unit, onlyIfAbsent]
+     * @return: void
+     */
+    private void writeAll(Map<String, byte[]> entries, Long time, TimeUnit unit, boolean onlyIfAbsent) {
+        RedisStringCommands.SetOption option = onlyIfAbsent ? RedisStringCommands.SetOption.ifAbsent() : RedisStringCommands.SetOption.upsert();
+        long baseMillis = unit.toMillis(time);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            if (!cacheLayouts.isEmpty()) {
+                cacheLayouts.loadScript(connection);
+            }
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                long ttlMillis = ttlPolicies.ttlMillis(entry.getKey(), baseMillis);
+                CacheLayouts.Slot slot = cacheLayouts.slotOf(entry.getKey());
+                if (slot != null) {
+                    cacheLayouts.write(connection, slot, entry.getValue(), ttlMillis, onlyIfAbsent);
+                } else {
+                    connection.stringCommands().set(rawKey(entry.getKey()), entry.getValue(), Expiration.milliseconds(ttlMillis), option);
+                }
+            }
+            return null;
+        });
+    }
+
+    private byte[] redisGet(String key) {
+        CacheLayouts.Slot slot = cacheLayouts.slotOf(key);
+        if (slot != null) {
+            byte[] stored = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hashCommands().hGet(slot.getBucket(), slot.getField()));
+            return CacheLayouts.unwrap(stored, System.currentTimeMillis());
+        }
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey(key)));
+    }
+
+    /**
+     * 批量读取：String 布局的 key 用一次 MGET，hash 分桶的 key 按桶合并为 HMGET，全部放在一次 pipeline 中
+     */
+    @SuppressWarnings("unchecked")
+    private List<byte[]> redisMultiGet(List<String> keys) {
+        if (cacheLayouts.isEmpty()) {
+            byte[][] rawKeys = new byte[keys.size()][];
+            for (int i = 0; i < rawKeys.length; i++) {
+                rawKeys[i] = rawKey(keys.get(i));
+            }
+            return stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(rawKeys));
+        }
+        List<Integer> plain = new ArrayList<>();
+        Map<String, List<Integer>> buckets = new LinkedHashMap<>();
+        CacheLayouts.Slot[] slots = new CacheLayouts.Slot[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            slots[i] = cacheLayouts.slotOf(keys.get(i));
+            if (slots[i] == null) {
+                plain.add(i);
+            } else {
+                buckets.computeIfAbsent(new String(slots[i].getBucket(), StandardCharsets.UTF_8), k -> new ArrayList<>()).add(i);
+            }
+        }
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            if (!plain.isEmpty()) {
+                byte[][] rawKeys = new byte[plain.size()][];
+                for (int i = 0; i < rawKeys.length; i++) {
+                    rawKeys[i] = rawKey(keys.get(plain.get(i)));
+                }
+                connection.stringCommands().mGet(rawKeys);
+            }
+            for (List<Integer> positions : buckets.values()) {
+                byte[][] fields = new byte[positions.size()][];
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = slots[positions.get(i)].getField();
+                }
+                connection.hashCommands().hMGet(slots[positions.get(0)].getBucket(), fields);
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+        List<byte[]> values = new ArrayList<>(Collections.nCopies(keys.size(), (byte[]) null));
+        int index = 0;
+        if (!plain.isEmpty()) {
+            List<byte[]> plainValues = (List<byte[]>) results.get(index++);
+            for (int i = 0; i < plain.size(); i++) {
+                values.set(plain.get(i), plainValues.get(i));
+            }
+        }
+        long now = System.currentTimeMillis();
+        for (List<Integer> positions : buckets.values()) {
+            List<byte[]> bucketValues = (List<byte[]>) results.get(index++);
+            for (int i = 0; i < positions.size(); i++) {
+                values.set(positions.get(i), CacheLayouts.unwrap(bucketValues.get(i), now));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 按自适应 TTL 写入，返回实际使用的 TTL（毫秒）
+     */
+    private long redisSet(String key, byte[] value, Long time, TimeUnit unit) {
+        long ttlMillis = ttlPolicies.ttlMillis(key, unit.toMillis(time));
+        CacheLayouts.Slot slot = cacheLayouts.slotOf(key);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            if (slot != null) {
+                cacheLayouts.write(connection, slot, value, ttlMillis);
+            } else {
+                connection.stringCommands().set(rawKey(key), value, Expiration.milliseconds(ttlMillis), RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+        return ttlMillis;
+    }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @description: 获取互斥锁
+     * @param: [key]
+     * @return: boolean
+     */
+    private boolean tryLock(String key) {
         Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10L, TimeUnit.SECONDS);
         return BooleanUtil.isTrue(flag);
     }
+
     /**
      * @description: 释放互斥锁
      * @param: [key]
      * @return: void
      */
-
     private void unLock(String key) {
         stringRedisTemplate.delete(key);
     }
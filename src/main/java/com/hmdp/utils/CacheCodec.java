@@ -0,0 +1,45 @@
+package com.hmdp.utils;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 缓存值编解码 SPI，缓存工具类通过它读写 Redis 与一级缓存中的字节；空数组代表缓存的空值
+ * @date 2023/3/16 14:10
+ */
+public interface CacheCodec {
+    /**
+     * 编码普通缓存值
+     * @param value 缓存对象，不能为 null
+     * @return 编码后的字节
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码普通缓存值
+     * @param bytes 编码后的字节
+     * @param type 目标类型
+     * @return 缓存对象
+     */
+    <R> R decode(byte[] bytes, Class<R> type);
+
+    /**
+     * 编码带逻辑过期时间的缓存值
+     * @param value 缓存对象
+     * @param expireAtMillis 逻辑过期时间（epoch 毫秒）
+     * @param rebuildCostMillis 本次重建的耗时，用于提前刷新的概率计算
+     * @return 编码后的字节
+     */
+    byte[] encodeWithExpire(Object value, long expireAtMillis, long rebuildCostMillis);
+
+    default byte[] encodeWithExpire(Object value, long expireAtMillis) {
+        return encodeWithExpire(value, expireAtMillis, 0L);
+    }
+
+    /**
+     * 解码带逻辑过期时间的缓存值，data 为目标类型的对象
+     * @param bytes 编码后的字节
+     * @param type 目标类型
+     * @return 逻辑过期数据
+     */
+    RedisData decodeWithExpire(byte[] bytes, Class<?> type);
+}
@@ -0,0 +1,33 @@
+package com.hmdp.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 按 key 前缀选择缓存编解码，未单独配置的前缀使用默认编解码
+ * @date 2023/3/16 16:50
+ */
+public class CacheCodecs {
+    private final CacheCodec defaultCodec;
+    private final Map<String, CacheCodec> codecs = new ConcurrentHashMap<>();
+
+    public CacheCodecs(CacheCodec defaultCodec) {
+        this.defaultCodec = defaultCodec;
+    }
+
+    public CacheCodecs register(String keyPrefix, CacheCodec codec) {
+        codecs.put(keyPrefix, codec);
+        return this;
+    }
+
+    public CacheCodec of(String key) {
+        for (Map.Entry<String, CacheCodec> entry : codecs.entrySet()) {
+            if (key.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return defaultCodec;
+    }
+}
@@ -0,0 +1,200 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 缓存失效管道：写操作只登记要删除的 key，事务提交后才真正失效（没有事务时立即登记）；
+ * 后台线程按时间窗口合并 key，用一次 pipeline 执行 UNLINK 与失效广播，并可在延迟后再删除一次（延迟双删，广播到 CACHE_INVALIDATE_REPEAT_CHANNEL）
+ * @date 2023/3/21 10:15
+ */
+@Slf4j
+@Component
+public class CacheInvalidator {
+    private final StringRedisTemplate stringRedisTemplate;
+    private final LocalCache localCache;
+    private final HotKeyCache hotKeyCache;
+    private final EntityVersions entityVersions;
+    private final CacheLayouts cacheLayouts;
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    // 延迟双删的第二次删除
+    private final BlockingQueue<String> repeatQueue = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-invalidator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder keys = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public CacheInvalidator(StringRedisTemplate stringRedisTemplate, LocalCache localCache, HotKeyCache hotKeyCache, EntityVersions entityVersions,
+                            CacheLayouts cacheLayouts) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.localCache = localCache;
+        this.hotKeyCache = hotKeyCache;
+        this.entityVersions = entityVersions;
+        this.cacheLayouts = cacheLayouts;
+        scheduler.scheduleWithFixedDelay(this::flush, INVALIDATE_BATCH_WINDOW_MILLIS, INVALIDATE_BATCH_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @description: 登记要失效的缓存 key：当前线程处于事务中时在提交后执行，事务回滚则不失效
+     * @param: [keys]
+     * @return: void
+     */
+    public void invalidate(String... keys) {
+        invalidate(Arrays.asList(keys));
+    }
+
+    public void invalidate(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<String> copy = new ArrayList<>(keys);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(copy, true);
+                }
+            });
+        } else {
+            enqueue(copy, true);
+        }
+    }
+
+    private void enqueue(List<String> keys, boolean scheduleSecondDelete) {
+        // 本节点的一级缓存立即失效，Redis 删除与广播交给后台批量执行
+        for (String key : keys) {
+            localCache.evict(key);
+            hotKeyCache.evict(key);
+        }
+        if (scheduleSecondDelete) {
+            queue.addAll(keys);
+        } else {
+            repeatQueue.addAll(keys);
+        }
+        if (scheduleSecondDelete && INVALIDATE_DOUBLE_DELETE_DELAY_MILLIS > 0) {
+            // 延迟双删：清掉提交前后并发读请求回填的旧值
+            scheduler.schedule(() -> enqueue(keys, false), INVALIDATE_DOUBLE_DELETE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 取出窗口内登记的全部 key，去重后分批 pipeline 执行 UNLINK 和广播；同一窗口内既有新的失效又有延迟双删的 key 只按新的失效广播
+     */
+    private void flush() {
+        Set<String> pending = drain(queue);
+        Set<String> repeated = drain(repeatQueue);
+        repeated.removeAll(pending);
+        execute(pending, CACHE_INVALIDATE_CHANNEL);
+        execute(repeated, CACHE_INVALIDATE_REPEAT_CHANNEL);
+    }
+
+    private static Set<String> drain(BlockingQueue<String> queue) {
+        Set<String> keys = new LinkedHashSet<>();
+        String key;
+        while ((key = queue.poll()) != null) {
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    private void execute(Set<String> keys, String channel) {
+        Set<String> batch = new LinkedHashSet<>();
+        for (String key : keys) {
+            batch.add(key);
+            if (batch.size() >= INVALIDATE_BATCH_SIZE) {
+                execute(batch, channel.getBytes(StandardCharsets.UTF_8));
+                batch = new LinkedHashSet<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            execute(batch, channel.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void execute(Set<String> batch, byte[] channel) {
+        byte[][] rawKeys = new byte[batch.size()][];
+        List<byte[]> versionKeys = new ArrayList<>();
+        // hash 分桶存储的 key 删除桶中的字段，其余 UNLINK
+        List<byte[]> plainKeys = new ArrayList<>(batch.size());
+        List<CacheLayouts.Slot> slots = new ArrayList<>();
+        int i = 0;
+        for (String key : batch) {
+            rawKeys[i++] = key.getBytes(StandardCharsets.UTF_8);
+            CacheLayouts.Slot slot = cacheLayouts.slotOf(key);
+            if (slot != null) {
+                slots.add(slot);
+            } else {
+                plainKeys.add(rawKeys[i - 1]);
+            }
+            if (entityVersions.isVersioned(key)) {
+                versionKeys.add(EntityVersions.versionKey(key).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                // 先递增版本号再广播，其他节点收到广播后读到的一定是新版本
+                for (byte[] versionKey : versionKeys) {
+                    connection.stringCommands().incr(versionKey);
+                }
+                if (!plainKeys.isEmpty()) {
+                    connection.keyCommands().unlink(plainKeys.toArray(new byte[0][]));
+                }
+                for (CacheLayouts.Slot slot : slots) {
+                    connection.hashCommands().hDel(slot.getBucket(), slot.getField());
+                }
+                for (byte[] rawKey : rawKeys) {
+                    connection.publish(channel, rawKey);
+                }
+                return null;
+            });
+            batches.increment();
+            keys.add(rawKeys.length);
+        } catch (Exception e) {
+            // 删除失败时依赖缓存 TTL 兜底
+            failures.increment();
+            log.error("批量删除缓存失败，共 {} 个 key", rawKeys.length, e);
+        }
+    }
+
+    /**
+     * @description: 待处理 key 数、已执行批次、已删除 key 数与失败批次
+     * @param: []
+     * @return: java.util.Map<java.lang.String,java.lang.Object>
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new TreeMap<>();
+        stats.put("queued", queue.size() + repeatQueue.size());
+        stats.put("batches", batches.sum());
+        stats.put("keys", keys.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+
+    /**
+     * 停机前把已登记的 key 全部删除
+     */
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        flush();
+    }
+}
@@ -0,0 +1,232 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.CACHE_HASH_BUCKET_INFIX;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 缓存在 Redis 中的存储布局（按 key 前缀配置）：默认每个 key 一个 String；配置了 hash 分桶的前缀按 id / 桶大小
+ * 把相邻 id 放进同一个 hash，字段为 id % 桶大小，值为 8 字节过期时间 + 编码后的缓存值。桶不超过 listpack 编码的限制时，
+ * 每个条目省去了独立 key 的 dictEntry、redisObject 与过期表的开销。过期按字段记录在值中，读取时已过期视为未命中
+ * （随后的回源会覆盖该字段）；桶本身的 TTL 只延长不缩短，不短于其中任何字段
+ * @date 2023/3/29 10:20
+ */
+@Slf4j
+public class CacheLayouts {
+    private static final byte[] BUCKET_SET_SCRIPT;
+    private static final String BUCKET_SET_SHA;
+    static {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource("bucket_set.lua"));
+        BUCKET_SET_SCRIPT = script.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        BUCKET_SET_SHA = script.getSha1();
+    }
+
+    private final Map<String, Integer> bucketSizes = new ConcurrentHashMap<>();
+    private final LongAdder oversizeWrites = new LongAdder();
+    private volatile long maxListpackEntries = -1;
+    private volatile long maxListpackValue = -1;
+
+    /**
+     * @description: 指定前缀使用 hash 分桶存储，id 为非负整数的 key 生效，其余 key 仍为 String
+     * @param: [keyPrefix, bucketSize]
+     * @return: com.hmdp.utils.CacheLayouts
+     */
+    public CacheLayouts register(String keyPrefix, int bucketSize) {
+        bucketSizes.put(keyPrefix, Math.max(1, bucketSize));
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return bucketSizes.isEmpty();
+    }
+
+    /**
+     * @description: key 在 hash 分桶中的位置；不使用分桶时返回 null
+     * @param: [key]
+     * @return: com.hmdp.utils.CacheLayouts.Slot
+     */
+    public Slot slotOf(String key) {
+        for (Map.Entry<String, Integer> entry : bucketSizes.entrySet()) {
+            String prefix = entry.getKey();
+            if (!key.startsWith(prefix)) {
+                continue;
+            }
+            long id = parseId(key, prefix.length());
+            if (id < 0) {
+                return null;
+            }
+            int bucketSize = entry.getValue();
+            return new Slot(prefix + CACHE_HASH_BUCKET_INFIX + id / bucketSize, Long.toString(id % bucketSize));
+        }
+        return null;
+    }
+
+    /**
+     * @description: 在 pipeline 中写入之前先调用一次：排队 SCRIPT LOAD，保证之后的 EVALSHA 不会因 Redis 重启或 SCRIPT FLUSH 失败
+     * （pipeline 中无法针对单条命令回退到 EVAL）；命令按顺序执行，整个 pipeline 只发送一次脚本原文
+     * @param: [connection]
+     * @return: void
+     */
+    public void loadScript(RedisConnection connection) {
+        connection.scriptingCommands().scriptLoad(BUCKET_SET_SCRIPT);
+    }
+
+    /**
+     * @description: 写入一个字段：ttlMillis 小于 0 表示不过期（逻辑过期缓存）。用 EVALSHA 执行脚本，Redis 中没有该脚本时回退到 EVAL
+     * （EVAL 同时会缓存脚本）；在 pipeline 中调用时需要先调用 loadScript
+     * @param: [connection, slot, value, ttlMillis]
+     * @return: void
+     */
+    public void write(RedisConnection connection, Slot slot, byte[] value, long ttlMillis) {
+        write(connection, slot, value, ttlMillis, false);
+    }
+
+    /**
+     * @description: 同上；onlyIfAbsent 为 true 时只在字段不存在或已过期时写入（相当于 SET NX）
+     * @param: [connection, slot, value, ttlMillis, onlyIfAbsent]
+     * @return: void
+     */
+    public void write(RedisConnection connection, Slot slot, byte[] value, long ttlMillis, boolean onlyIfAbsent) {
+        long now = System.currentTimeMillis();
+        long expireAt = ttlMillis < 0 ? 0L : now + ttlMillis;
+        byte[] stored = ByteBuffer.allocate(Long.BYTES + value.length).putLong(expireAt).put(value).array();
+        if (maxListpackValue >= 0 && stored.length > maxListpackValue) {
+            // 超过 hash-max-listpack-value 的值会把整个桶转换为 hashtable 编码
+            oversizeWrites.increment();
+        }
+        byte[][] keysAndArgs = {slot.bucket, slot.field, stored, Long.toString(ttlMillis).getBytes(StandardCharsets.UTF_8),
+                (onlyIfAbsent ? "1" : "0").getBytes(StandardCharsets.UTF_8), Long.toString(now).getBytes(StandardCharsets.UTF_8)};
+        try {
+            connection.scriptingCommands().evalSha(BUCKET_SET_SHA, ReturnType.INTEGER, 1, keysAndArgs);
+        } catch (RuntimeException e) {
+            // pipeline 中的错误在关闭 pipeline 时才抛出，不会进入这里
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            connection.scriptingCommands().eval(BUCKET_SET_SCRIPT, ReturnType.INTEGER, 1, keysAndArgs);
+        }
+    }
+
+    /**
+     * @description: 从桶中读出的字段值还原为缓存值；字段不存在或已过期时返回 null
+     * @param: [stored, now]
+     * @return: byte[]
+     */
+    public static byte[] unwrap(byte[] stored, long now) {
+        if (stored == null || stored.length < Long.BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(stored);
+        long expireAt = buffer.getLong();
+        if (expireAt != 0L && expireAt <= now) {
+            return null;
+        }
+        byte[] value = new byte[buffer.remaining()];
+        buffer.get(value);
+        return value;
+    }
+
+    /**
+     * @description: 读取 Redis 的 listpack（7.0 之前为 ziplist）编码限制，桶大小超过条目数限制时告警
+     * @param: [connection]
+     * @return: void
+     */
+    public void checkEncodingLimits(RedisConnection connection) {
+        if (bucketSizes.isEmpty()) {
+            return;
+        }
+        Properties config = connection.serverCommands().getConfig("hash-max-*");
+        maxListpackEntries = configValue(config, "entries");
+        maxListpackValue = configValue(config, "value");
+        bucketSizes.forEach((prefix, bucketSize) -> {
+            if (maxListpackEntries >= 0 && bucketSize > maxListpackEntries) {
+                log.warn("缓存前缀 {} 的桶大小 {} 超过 hash-max-listpack-entries = {}，桶将使用 hashtable 编码", prefix, bucketSize, maxListpackEntries);
+            }
+        });
+        log.info("hash 分桶缓存：{}，hash-max-listpack-entries = {}，hash-max-listpack-value = {}（超过该长度的值会使所在的桶退化为 hashtable）",
+                bucketSizes, maxListpackEntries, maxListpackValue);
+    }
+
+    /**
+     * @description: 各前缀的桶大小、Redis 的编码限制与超过值长度限制的写入次数
+     * @param: []
+     * @return: java.util.Map<java.lang.String,java.lang.Object>
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new TreeMap<>();
+        stats.put("bucketSizes", new TreeMap<>(bucketSizes));
+        stats.put("maxListpackEntries", maxListpackEntries);
+        stats.put("maxListpackValue", maxListpackValue);
+        stats.put("oversizeWrites", oversizeWrites.sum());
+        return stats;
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long configValue(Properties config, String suffix) {
+        String value = config.getProperty("hash-max-listpack-" + suffix, config.getProperty("hash-max-ziplist-" + suffix));
+        return value == null ? -1 : Long.parseLong(value.trim());
+    }
+
+    /**
+     * key 中前缀之后的部分为非负十进制整数（无前导 0）时返回该值，否则返回 -1
+     */
+    private static long parseId(String key, int from) {
+        int length = key.length() - from;
+        if (length <= 0 || length > 18 || (length > 1 && key.charAt(from) == '0')) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = from; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    /**
+     * 字段在 hash 分桶中的位置：桶 key 与字段名
+     */
+    public static final class Slot {
+        private final byte[] bucket;
+        private final byte[] field;
+
+        Slot(String bucket, String field) {
+            this.bucket = bucket.getBytes(StandardCharsets.UTF_8);
+            this.field = field.getBytes(StandardCharsets.UTF_8);
+        }
+
+        public byte[] getBucket() {
+            return bucket;
+        }
+
+        public byte[] getField() {
+            return field;
+        }
+    }
+}
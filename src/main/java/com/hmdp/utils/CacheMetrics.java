@@ -0,0 +1,44 @@
+package com.hmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 缓存指标计数，按 key 前缀分组（如一级缓存命中、Redis 命中、回源、提前刷新等）
+ * @date 2023/3/18 10:30
+ */
+@Component
+public class CacheMetrics {
+    private final Map<String, Map<String, LongAdder>> counters = new ConcurrentHashMap<>();
+
+    public void increment(String keyPrefix, String name) {
+        add(keyPrefix, name, 1L);
+    }
+
+    public void add(String keyPrefix, String name, long delta) {
+        counters.computeIfAbsent(keyPrefix, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(name, k -> new LongAdder())
+                .add(delta);
+    }
+
+    /**
+     * @description: 当前各指标的快照
+     * @param: []
+     * @return: java.util.Map<java.lang.String,java.util.Map<java.lang.String,java.lang.Long>>
+     */
+    public Map<String, Map<String, Long>> snapshot() {
+        Map<String, Map<String, Long>> snapshot = new TreeMap<>();
+        counters.forEach((prefix, metrics) -> {
+            Map<String, Long> values = new TreeMap<>();
+            metrics.forEach((name, adder) -> values.put(name, adder.sum()));
+            snapshot.put(prefix, values);
+        });
+        return snapshot;
+    }
+}
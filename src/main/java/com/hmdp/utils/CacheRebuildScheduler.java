@@ -0,0 +1,138 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 缓存重建调度器：所有异步重建共用一个有界线程池；同一个 key 同时只排队一次，
+ * 队列已满时拒绝提交，由调用方继续返回旧数据；停机时等待已提交的重建完成
+ * @date 2023/3/20 09:30
+ */
+@Slf4j
+@Component
+public class CacheRebuildScheduler {
+    // 正在排队或执行的 key -> 提交时间
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalWaitMillis = new LongAdder();
+    private final LongAdder totalRunMillis = new LongAdder();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+    private final AtomicLong maxRunMillis = new AtomicLong();
+
+    public CacheRebuildScheduler() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(REBUILD_THREADS, REBUILD_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(REBUILD_QUEUE_CAPACITY),
+                r -> new Thread(r, "cache-rebuild-" + threadIndex.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @description: 提交一个 key 的重建任务；该 key 已在排队或执行、或队列已满时返回 false，调用方应继续使用旧数据
+     * @param: [key, task]
+     * @return: boolean 是否已接受
+     */
+    public boolean submit(String key, Runnable task) {
+        long submitAt = System.currentTimeMillis();
+        if (pending.putIfAbsent(key, submitAt) != null) {
+            deduplicated.increment();
+            return false;
+        }
+        try {
+            executor.execute(() -> run(key, task, submitAt));
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+            rejected.increment();
+            return false;
+        }
+        submitted.increment();
+        return true;
+    }
+
+    /**
+     * @description: 该 key 是否已有重建在排队或执行
+     * @param: [key]
+     * @return: boolean
+     */
+    public boolean isPending(String key) {
+        return pending.containsKey(key);
+    }
+
+    private void run(String key, Runnable task, long submitAt) {
+        long begin = System.currentTimeMillis();
+        record(totalWaitMillis, maxWaitMillis, begin - submitAt);
+        try {
+            task.run();
+            completed.increment();
+        } catch (Exception e) {
+            failed.increment();
+            log.error("缓存重建失败，key = {}", key, e);
+        } finally {
+            pending.remove(key);
+            record(totalRunMillis, maxRunMillis, System.currentTimeMillis() - begin);
+        }
+    }
+
+    private static void record(LongAdder total, AtomicLong max, long millis) {
+        total.add(millis);
+        max.accumulateAndGet(millis, Math::max);
+    }
+
+    /**
+     * @description: 队列深度、去重/拒绝次数与排队、执行耗时
+     * @param: []
+     * @return: java.util.Map<java.lang.String,java.lang.Object>
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new TreeMap<>();
+        long finished = completed.sum() + failed.sum();
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueCapacity", REBUILD_QUEUE_CAPACITY);
+        stats.put("active", executor.getActiveCount());
+        stats.put("pendingKeys", pending.size());
+        stats.put("submitted", submitted.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("completed", completed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("avgWaitMillis", finished == 0 ? 0 : totalWaitMillis.sum() / finished);
+        stats.put("maxWaitMillis", maxWaitMillis.get());
+        stats.put("avgRunMillis", finished == 0 ? 0 : totalRunMillis.sum() / finished);
+        stats.put("maxRunMillis", maxRunMillis.get());
+        return stats;
+    }
+
+    /**
+     * 停机时不再接受新任务，等待已提交的重建完成，超时后中断
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(REBUILD_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                log.warn("缓存重建线程池未在 {} 秒内结束，剩余 {} 个任务被丢弃", REBUILD_SHUTDOWN_TIMEOUT, executor.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.ShopTypeMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 启动预热：并行流式读取店铺、店铺类型和未结束的秒杀券，分批用 pipeline 写入商铺缓存和秒杀库存，店铺 GEO 集合交给 ShopGeoLoader 全量加载；
+ * 预热完成（或超出时间预算）之前应用保持 REFUSING_TRAFFIC，不接收负载均衡的流量
+ * @date 2023/3/22 09:40
+ */
+@Slf4j
+@Component
+public class CacheWarmer implements ApplicationRunner {
+    private static final String SHOP_TYPE_STAGING_SUFFIX = ":warming";
+
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private ShopTypeMapper shopTypeMapper;
+    @Resource
+    private SeckillVoucherMapper seckillVoucherMapper;
+    @Resource
+    private CacheClientUtils cacheClientUtils;
+    @Resource
+    private ShopGeoLoader shopGeoLoader;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private PlatformTransactionManager transactionManager;
+    @Resource
+    private ApplicationContext applicationContext;
+    @Value("${hmdp.cache.warm-up:true}")
+    private boolean enabled;
+
+    // 各数据源已写入的条数
+    private final Map<String, AtomicLong> progress = new ConcurrentSkipListMap<>();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private volatile String state = "PENDING";
+    private volatile long beginMillis;
+    private volatile long endMillis;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            state = "DISABLED";
+            return;
+        }
+        // 应用在所有 ApplicationRunner 执行完后才会进入 ACCEPTING_TRAFFIC，这里显式声明预热期间不接收流量
+        AvailabilityChangeEvent.publish(applicationContext, ReadinessState.REFUSING_TRAFFIC);
+        ExecutorService starter = newThreadPool(1, "cache-warmer");
+        CompletableFuture<Void> warm = CompletableFuture.runAsync(this::warmAll, starter);
+        starter.shutdown();
+        try {
+            warm.get(WARM_UP_TIME_BUDGET, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            // 超出时间预算：先开始接收流量，预热在后台继续
+            state = "TIMEOUT";
+            log.warn("缓存预热超过 {} 秒仍未完成，先开始接收流量，当前进度 {}", WARM_UP_TIME_BUDGET, progress);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("缓存预热失败", e.getCause());
+        }
+    }
+
+    /**
+     * @description: 预热进度：状态、耗时、各数据源已写入条数、失败批次
+     * @param: []
+     * @return: java.util.Map<java.lang.String,java.lang.Object>
+     */
+    public Map<String, Object> progress() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("state", state);
+        long end = endMillis > 0 ? endMillis : System.currentTimeMillis();
+        result.put("elapsedMillis", beginMillis > 0 ? end - beginMillis : 0);
+        progress.forEach((name, count) -> result.put(name, count.get()));
+        result.put("failedBatches", failedBatches.get());
+        return result;
+    }
+
+    private void warmAll() {
+        state = "RUNNING";
+        beginMillis = System.currentTimeMillis();
+        // 读线程每个数据源一个；写线程有界，同时在途的批次数受信号量限制，避免读得快写得慢时堆积内存
+        ExecutorService readers = newThreadPool(4, "cache-warmer-reader");
+        ExecutorService writers = newThreadPool(WARM_UP_THREADS, "cache-warmer-writer");
+        Semaphore inFlight = new Semaphore(WARM_UP_THREADS * 2);
+        try {
+            CompletableFuture.allOf(
+                    CompletableFuture.runAsync(this::warmShopTypes, readers),
+                    CompletableFuture.runAsync(this::warmShopGeo, readers),
+                    CompletableFuture.runAsync(() -> stream(shopMapper::scanAll, batch -> submit(writers, inFlight, () -> writeShops(batch))), readers),
+                    CompletableFuture.runAsync(() -> stream(seckillVoucherMapper::scanActive, batch -> submit(writers, inFlight, () -> writeStocks(batch))), readers)
+            ).join();
+            writers.shutdown();
+            writers.awaitTermination(WARM_UP_TIME_BUDGET, TimeUnit.SECONDS);
+            state = failedBatches.get() == 0 ? "DONE" : "DONE_WITH_ERRORS";
+            endMillis = System.currentTimeMillis();
+            log.info("缓存预热完成，耗时 {} ms，{}", endMillis - beginMillis, progress);
+        } catch (CompletionException e) {
+            state = "FAILED";
+            endMillis = System.currentTimeMillis();
+            log.error("缓存预热失败，当前进度 {}", progress, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            readers.shutdown();
+            writers.shutdownNow();
+        }
+    }
+
+    /**
+     * 在只读事务中遍历游标（事务结束前连接不会归还），按批交给写线程
+     */
+    private <T> void stream(Supplier<Cursor<T>> scanner, Consumer<List<T>> batchConsumer) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        template.executeWithoutResult(status -> {
+            try (Cursor<T> cursor = scanner.get()) {
+                List<T> batch = new ArrayList<>(WARM_UP_BATCH_SIZE);
+                for (T row : cursor) {
+                    batch.add(row);
+                    if (batch.size() >= WARM_UP_BATCH_SIZE) {
+                        batchConsumer.accept(batch);
+                        batch = new ArrayList<>(WARM_UP_BATCH_SIZE);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batchConsumer.accept(batch);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void submit(ExecutorService writers, Semaphore inFlight, Runnable task) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("缓存预热被中断");
+        }
+        writers.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                failedBatches.incrementAndGet();
+                log.error("缓存预热批次写入失败", e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * 商铺缓存一次 pipeline，只在 key 不存在时写入：游标读到该行之后其他节点可能已修改并回填了新值，不能用旧行覆盖
+     */
+    private void writeShops(List<Shop> shops) {
+        Map<String, Shop> entries = new LinkedHashMap<>(shops.size());
+        for (Shop shop : shops) {
+            entries.put(CACHE_SHOP_KEY + shop.getId(), shop);
+        }
+        cacheClientUtils.setAllIfAbsent(entries, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        report("shop", shops.size());
+    }
+
+    /**
+     * GEO 集合由 ShopGeoLoader 写入临时 key 后整体替换；其他节点正在加载时跳过
+     */
+    private void warmShopGeo() {
+        long count = shopGeoLoader.reloadAll();
+        if (count > 0) {
+            report("shopGeo", (int) count);
+        }
+    }
+
+    /**
+     * 库存只在 key 不存在时写入：Redis 中的库存由 Lua 脚本先扣减，数据库是异步落库的，不能用数据库的值覆盖
+     */
+    private void writeStocks(List<SeckillVoucher> vouchers) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (SeckillVoucher voucher : vouchers) {
+                stringConnection.setNX(SECKILL_STOCK_KEY + voucher.getVoucherId(), String.valueOf(voucher.getStock()));
+            }
+            return null;
+        });
+        report("seckillStock", vouchers.size());
+    }
+
+    /**
+     * 店铺类型数量很少，整体写入临时 key 后 RENAME，读请求不会看到写了一半的列表
+     */
+    private void warmShopTypes() {
+        List<ShopType> types = shopTypeMapper.selectList(new QueryWrapper<ShopType>().orderByAsc("sort"));
+        if (types.isEmpty()) {
+            return;
+        }
+        String staging = CACHE_SHOP_TYPE + SHOP_TYPE_STAGING_SUFFIX;
+        String[] jsons = types.stream().map(JSONUtil::toJsonStr).toArray(String[]::new);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.del(staging);
+            stringConnection.rPush(staging, jsons);
+            stringConnection.rename(staging, CACHE_SHOP_TYPE);
+            return null;
+        });
+        report("shopType", types.size());
+    }
+
+    private void report(String name, int count) {
+        long total = progress.computeIfAbsent(name, k -> new AtomicLong()).addAndGet(count);
+        if (total / WARM_UP_REPORT_INTERVAL != (total - count) / WARM_UP_REPORT_INTERVAL) {
+            log.info("缓存预热进度：{} 已写入 {} 条，耗时 {} ms", name, total, System.currentTimeMillis() - beginMillis);
+        }
+    }
+
+    private static ExecutorService newThreadPool(int threads, String name) {
+        AtomicInteger index = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, name + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
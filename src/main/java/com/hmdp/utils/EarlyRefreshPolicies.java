@@ -0,0 +1,42 @@
+package com.hmdp.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 逻辑过期缓存的概率提前刷新策略（按 key 前缀开启）。
+ * 每次读取时以 now - cost * beta * ln(rand) >= expireAt 判断是否提前重建：越接近过期、重建耗时越长，提前重建的概率越高，
+ * 热点数据会在过期前被某一个请求刷新，而不会在过期瞬间集中争抢重建
+ * @date 2023/3/18 10:50
+ */
+public class EarlyRefreshPolicies {
+    private final Map<String, Double> betas = new ConcurrentHashMap<>();
+
+    /**
+     * @description: 为指定前缀开启提前刷新；beta 越大越早刷新，1.0 为推荐值
+     * @param: [keyPrefix, beta]
+     * @return: com.hmdp.utils.EarlyRefreshPolicies
+     */
+    public EarlyRefreshPolicies register(String keyPrefix, double beta) {
+        betas.put(keyPrefix, beta);
+        return this;
+    }
+
+    /**
+     * @description: 判断本次读取是否需要提前重建
+     * @param: [keyPrefix, expireAtMillis, rebuildCostMillis, nowMillis]
+     * @return: boolean
+     */
+    public boolean shouldRefreshEarly(String keyPrefix, long expireAtMillis, long rebuildCostMillis, long nowMillis) {
+        Double beta = betas.get(keyPrefix);
+        if (beta == null || rebuildCostMillis <= 0) {
+            return false;
+        }
+        // 1 - nextDouble() 的取值范围是 (0, 1]，ln 结果 <= 0
+        double gap = -rebuildCostMillis * beta * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+        return nowMillis + gap >= expireAtMillis;
+    }
+}
@@ -0,0 +1,95 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 实体版本号：以缓存 key 为单位，在 Redis 中维护 version:{缓存key} 计数器，实体写入（缓存失效）时自增，用于生成 ETag。
+ * 本节点缓存读到的版本号，收到同一个失效广播时删除，判断 304 时通常不需要访问 Redis 和数据库
+ * @date 2023/3/26 10:30
+ */
+@Component
+public class EntityVersions {
+    // 需要维护版本号的缓存 key 前缀
+    private static final List<String> VERSIONED_PREFIXES = Arrays.asList(CACHE_SHOP_KEY, CACHE_BLOG_KEY, CACHE_SHOP_TYPE);
+
+    private final LocalCache localCache = new LocalCache();
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    public EntityVersions(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        localCache.configure("", VERSION_LOCAL_MAX_ENTRIES, VERSION_LOCAL_MAX_ENTRIES * 128L, VERSION_LOCAL_TTL, TimeUnit.SECONDS);
+    }
+
+    @PostConstruct
+    public void subscribeInvalidation() {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> localCache.evict(new String(message.getBody(), StandardCharsets.UTF_8)),
+                Arrays.asList(new ChannelTopic(CACHE_INVALIDATE_CHANNEL), new ChannelTopic(CACHE_INVALIDATE_REPEAT_CHANNEL)));
+    }
+
+    /**
+     * @description: 缓存 key 是否需要维护版本号
+     * @param: [key]
+     * @return: boolean
+     */
+    public boolean isVersioned(String key) {
+        for (String prefix : VERSIONED_PREFIXES) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @description: 版本号在 Redis 中的 key
+     * @param: [key]
+     * @return: java.lang.String
+     */
+    public static String versionKey(String key) {
+        return VERSION_KEY + key;
+    }
+
+    /**
+     * @description: 当前版本号，从未修改过的实体为 0
+     * @param: [key]
+     * @return: long
+     */
+    public long version(String key) {
+        long epoch = localCache.epoch(key);
+        byte[] cached = localCache.get(key);
+        if (cached != null) {
+            return ByteBuffer.wrap(cached).getLong();
+        }
+        String value = stringRedisTemplate.opsForValue().get(versionKey(key));
+        long version = value == null ? 0L : Long.parseLong(value);
+        localCache.put(key, ByteBuffer.allocate(Long.BYTES).putLong(version).array(), epoch);
+        return version;
+    }
+
+    /**
+     * @description: 弱 ETag，variant 用于区分同一实体在不同用户下的不同响应（如是否点赞），没有时传 null
+     * @param: [key, variant]
+     * @return: java.lang.String
+     */
+    public String etag(String key, Object variant) {
+        long version = version(key);
+        return variant == null ? "W/\"" + version + "\"" : "W/\"" + version + "-" + variant + "\"";
+    }
+}
@@ -0,0 +1,22 @@
+package com.hmdp.utils;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 存在性过滤器：mightContain 返回 false 表示 id 一定不存在，可在查询缓存和数据库之前直接拦截
+ * @date 2023/3/14 09:30
+ */
+public interface ExistenceFilter {
+    /**
+     * 判断 id 是否可能存在
+     * @param id 数据id
+     * @return false 代表一定不存在；true 代表可能存在
+     */
+    boolean mightContain(long id);
+
+    /**
+     * 记录一个存在的 id（新增数据时调用）
+     * @param id 数据id
+     */
+    void put(long id);
+}
@@ -0,0 +1,230 @@
+package com.hmdp.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 不可变的经纬度网格索引：按固定边长（度）把点划分到网格，点按网格编号排序后存入基本类型数组，
+ * 查询时从中心网格开始逐圈向外扫描，扫到的最近距离下界超过当前第 k 个结果（或半径）时停止。
+ * 距离使用与 Redis GEO 相同的 haversine 公式与地球半径，结果与 GEOSEARCH 一致
+ * @date 2023/3/26 15:20
+ */
+public final class GeoGridIndex {
+    // Redis GEO 使用的地球半径（米）
+    public static final double EARTH_RADIUS_IN_METERS = 6372797.560856;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS_IN_METERS * Math.PI / 180D;
+
+    private final double cellDegrees;
+    // 网格编号（升序、去重）及每个网格在点数组中的起始下标，cellStart 比 cellKeys 多一个结尾下标
+    private final long[] cellKeys;
+    private final int[] cellStart;
+    private final long[] ids;
+    private final double[] xs;
+    private final double[] ys;
+
+    private GeoGridIndex(double cellDegrees, long[] cellKeys, int[] cellStart, long[] ids, double[] xs, double[] ys) {
+        this.cellDegrees = cellDegrees;
+        this.cellKeys = cellKeys;
+        this.cellStart = cellStart;
+        this.ids = ids;
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    /**
+     * @description: 由点集构建索引，三个数组的前 size 个元素有效；id 重复时调用方负责去重
+     * @param: [cellDegrees, ids, xs, ys, size]
+     * @return: com.hmdp.utils.GeoGridIndex
+     */
+    public static GeoGridIndex build(double cellDegrees, long[] ids, double[] xs, double[] ys, int size) {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = cellKey(cell(xs[i] + 180D, cellDegrees), cell(ys[i] + 90D, cellDegrees));
+        }
+        // 网格编号换成其在全部编号中的排名（不超过 size），与下标拼成一个 long 后按基本类型排序，避免装箱
+        long[] ranks = Arrays.copyOf(keys, size);
+        Arrays.sort(ranks);
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) Arrays.binarySearch(ranks, keys[i]) << 32) | i;
+        }
+        Arrays.sort(order);
+        long[] sortedIds = new long[size];
+        double[] sortedXs = new double[size];
+        double[] sortedYs = new double[size];
+        long[] cellKeys = new long[size];
+        int[] cellStart = new int[size + 1];
+        int cells = 0;
+        for (int i = 0; i < size; i++) {
+            int from = (int) order[i];
+            sortedIds[i] = ids[from];
+            sortedXs[i] = xs[from];
+            sortedYs[i] = ys[from];
+            if (cells == 0 || cellKeys[cells - 1] != keys[from]) {
+                cellKeys[cells] = keys[from];
+                cellStart[cells++] = i;
+            }
+        }
+        cellStart[cells] = size;
+        return new GeoGridIndex(cellDegrees, Arrays.copyOf(cellKeys, cells), Arrays.copyOf(cellStart, cells + 1), sortedIds, sortedXs, sortedYs);
+    }
+
+    public static GeoGridIndex empty(double cellDegrees) {
+        return new GeoGridIndex(cellDegrees, new long[0], new int[]{0}, new long[0], new double[0], new double[0]);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @description: 查询距离 (x, y) 不超过 radiusMeters 的最近 limit 个点，按距离升序；radiusMeters 为正无穷时即 k 近邻
+     * @param: [x, y, radiusMeters, limit]
+     * @return: java.util.List<com.hmdp.utils.GeoGridIndex.Hit>
+     */
+    public List<Hit> search(double x, double y, double radiusMeters, int limit) {
+        if (limit <= 0 || ids.length == 0) {
+            return Collections.emptyList();
+        }
+        // 大顶堆保存当前最近的 limit 个点
+        PriorityQueue<Hit> nearest = new PriorityQueue<>(limit, Comparator.comparingDouble(Hit::getDistance).reversed());
+        long cx = cell(x + 180D, cellDegrees);
+        long cy = cell(y + 90D, cellDegrees);
+        // 一个网格在东西方向上的最短边长（米），按查询点所在纬度附近最靠近极点的一侧估算
+        double maxLat = Math.min(90D, Math.abs(y) + cellDegrees);
+        double cellMeters = cellDegrees * METERS_PER_DEGREE * Math.max(Math.cos(Math.toRadians(maxLat)), 1e-6);
+        long maxRing = Math.min(Math.round(360D / cellDegrees), Double.isInfinite(radiusMeters) ? Long.MAX_VALUE : (long) Math.ceil(radiusMeters / cellMeters) + 1);
+        int scanned = 0;
+        for (long ring = 0; ring <= maxRing; ring++) {
+            if (ring * 8 > cellKeys.length) {
+                // 这一圈的网格数已超过非空网格数（点很稀疏或离查询点很远），直接扫描全部点更快
+                nearest.clear();
+                for (int i = 0; i < cellKeys.length; i++) {
+                    scanRange(cellStart[i], cellStart[i + 1], x, y, radiusMeters, limit, nearest);
+                }
+                break;
+            }
+            if (ring == 0) {
+                scanned += scanCell(cx, cy, x, y, radiusMeters, limit, nearest);
+            } else {
+                for (long dx = -ring; dx <= ring; dx++) {
+                    scanned += scanCell(cx + dx, cy - ring, x, y, radiusMeters, limit, nearest);
+                    scanned += scanCell(cx + dx, cy + ring, x, y, radiusMeters, limit, nearest);
+                }
+                for (long dy = -ring + 1; dy < ring; dy++) {
+                    scanned += scanCell(cx - ring, cy + dy, x, y, radiusMeters, limit, nearest);
+                    scanned += scanCell(cx + ring, cy + dy, x, y, radiusMeters, limit, nearest);
+                }
+            }
+            // 还没扫描的网格距查询点至少 ring 个网格边长；所有点都扫描过时也可以结束
+            double unscannedLowerBound = ring * cellMeters;
+            if (scanned == ids.length || unscannedLowerBound > radiusMeters
+                    || (nearest.size() == limit && unscannedLowerBound >= nearest.peek().getDistance())) {
+                break;
+            }
+        }
+        List<Hit> result = new ArrayList<>(nearest);
+        result.sort(Comparator.comparingDouble(Hit::getDistance).thenComparingLong(Hit::getId));
+        return result;
+    }
+
+    /**
+     * 扫描一个网格，返回网格中的点数
+     */
+    private int scanCell(long cx, long cy, double x, double y, double radiusMeters, int limit, PriorityQueue<Hit> nearest) {
+        int index = Arrays.binarySearch(cellKeys, cellKey(cx, cy));
+        if (index < 0) {
+            return 0;
+        }
+        scanRange(cellStart[index], cellStart[index + 1], x, y, radiusMeters, limit, nearest);
+        return cellStart[index + 1] - cellStart[index];
+    }
+
+    private void scanRange(int from, int to, double x, double y, double radiusMeters, int limit, PriorityQueue<Hit> nearest) {
+        for (int i = from; i < to; i++) {
+            double distance = distance(x, y, xs[i], ys[i]);
+            if (distance > radiusMeters) {
+                continue;
+            }
+            if (nearest.size() < limit) {
+                nearest.add(new Hit(ids[i], distance));
+            } else if (distance < nearest.peek().getDistance()) {
+                nearest.poll();
+                nearest.add(new Hit(ids[i], distance));
+            }
+        }
+    }
+
+    /**
+     * @description: 返回去掉 removed 中的 id、再加入 added 中各点后的新索引，原索引不变
+     * @param: [removed, addedIds, addedXs, addedYs, addedSize]
+     * @return: com.hmdp.utils.GeoGridIndex
+     */
+    public GeoGridIndex with(Set<Long> removed, long[] addedIds, double[] addedXs, double[] addedYs, int addedSize) {
+        int capacity = ids.length + addedSize;
+        long[] newIds = new long[capacity];
+        double[] newXs = new double[capacity];
+        double[] newYs = new double[capacity];
+        int size = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (!removed.contains(ids[i])) {
+                newIds[size] = ids[i];
+                newXs[size] = xs[i];
+                newYs[size++] = ys[i];
+            }
+        }
+        System.arraycopy(addedIds, 0, newIds, size, addedSize);
+        System.arraycopy(addedXs, 0, newXs, size, addedSize);
+        System.arraycopy(addedYs, 0, newYs, size, addedSize);
+        return build(cellDegrees, newIds, newXs, newYs, size + addedSize);
+    }
+
+    /**
+     * @description: 两点间的球面距离（米），与 Redis GEO 的 geohashGetDistance 相同
+     * @param: [x1, y1, x2, y2]
+     * @return: double
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2D * EARTH_RADIUS_IN_METERS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    private static long cell(double offsetDegrees, double cellDegrees) {
+        return (long) Math.floor(offsetDegrees / cellDegrees);
+    }
+
+    private static long cellKey(long cx, long cy) {
+        return (cx << 32) | (cy & 0xffffffffL);
+    }
+
+    /**
+     * 查询结果：id 与距离（米）
+     */
+    public static final class Hit {
+        private final long id;
+        private final double distance;
+
+        public Hit(long id, double distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.hmdp.utils;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 热点 key 探测与本地副本：对穿透到 Redis 的读取按比例采样计入滑动窗口草图，
+ * 窗口内估计访问量超过阈值的 key 晋升为热点，在本进程保存一份短 TTL 的副本；访问量回落到阈值一半以下时降级
+ * @date 2023/3/19 14:40
+ */
+public class HotKeyCache {
+    private final SlidingWindowSketch sketch;
+    private final int sampleRate;
+    private final long promoteThreshold;
+    private final long demoteThreshold;
+    private final int capacity;
+    private final Map<String, HotKey> hotKeys = new ConcurrentHashMap<>();
+    // 热点 key 的本地副本，复用一级缓存的分段 LRU 与失效版本号
+    private final LocalCache replica = new LocalCache();
+
+    /**
+     * @param sampleRate       采样比例，每 sampleRate 次读取记录一次
+     * @param promoteThreshold 窗口内估计访问次数达到该值时晋升
+     * @param capacity         同时存在的热点 key 上限
+     * @param replicaTtl       本地副本的 TTL
+     */
+    public HotKeyCache(SlidingWindowSketch sketch, int sampleRate, long promoteThreshold, int capacity, long replicaTtl, TimeUnit unit) {
+        this.sketch = sketch;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.promoteThreshold = promoteThreshold;
+        this.demoteThreshold = promoteThreshold / 2;
+        this.capacity = capacity;
+        // 空前缀匹配所有 key；副本只会写入热点 key，条目数按热点上限控制
+        replica.configure("", capacity, capacity * 64L * 1024, replicaTtl, unit);
+    }
+
+    /**
+     * @description: 记录一次读取，返回该 key 当前是否为热点
+     * @param: [key]
+     * @return: boolean
+     */
+    public boolean record(String key) {
+        HotKey hotKey = hotKeys.get(key);
+        if (hotKey != null) {
+            hotKey.reads.increment();
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (sampleRate > 1 && random.nextInt(sampleRate) != 0) {
+            return hotKey != null;
+        }
+        long now = System.currentTimeMillis();
+        if (sketch.advance(now)) {
+            demoteCooled();
+        }
+        long estimate = sketch.add(key, sampleRate);
+        if (hotKey != null) {
+            hotKey.estimate = estimate;
+            return true;
+        }
+        return estimate >= promoteThreshold && promote(key, estimate, now);
+    }
+
+    /**
+     * @description: 读取热点 key 的本地副本，未命中返回 null
+     * @param: [key]
+     * @return: byte[]
+     */
+    public byte[] get(String key) {
+        byte[] value = replica.get(key);
+        if (value != null) {
+            HotKey hotKey = hotKeys.get(key);
+            if (hotKey != null) {
+                hotKey.hits.increment();
+            }
+        }
+        return value;
+    }
+
+    public long epoch(String key) {
+        return replica.epoch(key);
+    }
+
+    /**
+     * @description: 仍为热点时写入本地副本
+     * @param: [key, value, epoch]
+     * @return: void
+     */
+    public void put(String key, byte[] value, long epoch) {
+        if (hotKeys.containsKey(key)) {
+            replica.put(key, value, epoch);
+        }
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    public void evict(String key) {
+        replica.evict(key);
+    }
+
+    /**
+     * @description: 当前热点 key 列表，按窗口内估计访问量降序
+     * @param: []
+     * @return: java.util.List<com.hmdp.utils.HotKeyCache.HotKey>
+     */
+    public List<HotKey> snapshot() {
+        List<HotKey> list = new ArrayList<>(hotKeys.values());
+        list.sort(Comparator.comparingLong(HotKey::getEstimate).reversed());
+        return list;
+    }
+
+    private synchronized boolean promote(String key, long estimate, long now) {
+        if (hotKeys.containsKey(key)) {
+            return true;
+        }
+        if (hotKeys.size() >= capacity) {
+            // 已满：只有比当前最冷的热点更热时才替换它
+            HotKey coldest = null;
+            for (HotKey hotKey : hotKeys.values()) {
+                if (coldest == null || hotKey.estimate < coldest.estimate) {
+                    coldest = hotKey;
+                }
+            }
+            if (coldest == null || coldest.estimate >= estimate) {
+                return false;
+            }
+            demote(coldest.key);
+        }
+        hotKeys.put(key, new HotKey(key, estimate, now));
+        return true;
+    }
+
+    /**
+     * 进入新的时间片时检查全部热点，访问量回落的降级
+     */
+    private synchronized void demoteCooled() {
+        for (HotKey hotKey : hotKeys.values()) {
+            hotKey.estimate = sketch.estimate(hotKey.key);
+            if (hotKey.estimate < demoteThreshold) {
+                demote(hotKey.key);
+            }
+        }
+    }
+
+    private void demote(String key) {
+        hotKeys.remove(key);
+        replica.evict(key);
+    }
+
+    public static final class HotKey {
+        private final String key;
+        private final long promotedAt;
+        private final LongAdder reads = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private volatile long estimate;
+
+        HotKey(String key, long estimate, long promotedAt) {
+            this.key = key;
+            this.estimate = estimate;
+            this.promotedAt = promotedAt;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getEstimate() {
+            return estimate;
+        }
+
+        public long getReads() {
+            return reads.sum();
+        }
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public double getHitRate() {
+            long reads = getReads();
+            return reads == 0 ? 0D : (double) getHits() / reads;
+        }
+
+        public LocalDateTime getPromotedAt() {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(promotedAt), ZoneId.systemDefault());
+        }
+    }
+}
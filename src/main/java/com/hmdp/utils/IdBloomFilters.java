@@ -0,0 +1,180 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.NumberUtil;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.UserMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ResultHandler;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 按缓存 key 前缀管理 id 布隆过滤器，解决随机 id 造成的缓存穿透；启动时流式扫描数据库构建，新增数据时增量写入并广播到其他节点，
+ * 广播是至多一次的（订阅断开期间的消息会丢失），因此定时从数据库重建，丢失的 id 最多被误拦截一个重建周期
+ * @date 2023/3/14 10:20
+ */
+@Slf4j
+@Component
+public class IdBloomFilters {
+    private final Map<String, Registration> registrations = new ConcurrentHashMap<>();
+
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private BlogMapper blogMapper;
+    @Resource
+    private UserMapper userMapper;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    @PostConstruct
+    public void init() {
+        // 构建完成前过滤器为空，放行所有请求
+        registrations.put(CACHE_SHOP_KEY, new Registration());
+        registrations.put(CACHE_BLOG_KEY, new Registration());
+        registrations.put(CACHE_USER_KEY, new Registration());
+        // 订阅其他节点新增的 id
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onRemotePut(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(BLOOM_ADD_CHANNEL));
+    }
+
+    /**
+     * @description: 应用启动完成后流式扫描各表的 id 构建过滤器
+     * @param: []
+     * @return: void
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        build(CACHE_SHOP_KEY, () -> shopMapper.selectCount(null), shopMapper::scanIds);
+        build(CACHE_BLOG_KEY, () -> blogMapper.selectCount(null), blogMapper::scanIds);
+        build(CACHE_USER_KEY, () -> userMapper.selectCount(null), userMapper::scanIds);
+    }
+
+    /**
+     * @description: 定时重建：修复因广播丢失而缺少的 id，同时按最新的数据量重新确定过滤器大小
+     * @param: []
+     * @return: void
+     */
+    @Scheduled(initialDelay = BLOOM_REBUILD_INTERVAL, fixedDelay = BLOOM_REBUILD_INTERVAL)
+    public void rebuild() {
+        build();
+    }
+
+    /**
+     * @description: 判断 id 是否可能存在；未配置过滤器或过滤器尚未构建完成时返回 true
+     * @param: [keyPrefix, id]
+     * @return: boolean
+     */
+    public boolean mightContain(String keyPrefix, Object id) {
+        Registration registration = registrations.get(keyPrefix);
+        ExistenceFilter filter = registration == null ? null : registration.filter;
+        if (filter == null || id == null) {
+            return true;
+        }
+        Long value = toLong(id);
+        return value == null || filter.mightContain(value);
+    }
+
+    /**
+     * @description: 新增数据后记录 id，并广播给其他节点
+     * @param: [keyPrefix, id]
+     * @return: void
+     */
+    public void put(String keyPrefix, Long id) {
+        Registration registration = registrations.get(keyPrefix);
+        if (registration == null || id == null) {
+            return;
+        }
+        registration.put(id);
+        stringRedisTemplate.convertAndSend(BLOOM_ADD_CHANNEL, keyPrefix + id);
+    }
+
+    private void build(String keyPrefix, Supplier<Integer> counter, Consumer<ResultHandler<Long>> scanner) {
+        Registration registration = registrations.get(keyPrefix);
+        AtomicLong loaded = new AtomicLong();
+        long begin = System.currentTimeMillis();
+        try {
+            // 预留 1 倍的增长空间，写满后过滤器会自动扩容
+            Integer count = counter.get();
+            ExistenceFilter filter = new ScalableBloomFilter(2L * (count == null ? 0 : count), BLOOM_FALSE_POSITIVE_RATE);
+            // 先挂上新过滤器再扫描：扫描期间新增的 id 同时写入新旧过滤器，不会因切换而丢失
+            registration.building = filter;
+            scanner.accept(context -> {
+                filter.put(context.getResultObject());
+                loaded.incrementAndGet();
+            });
+            registration.filter = filter;
+            log.info("布隆过滤器 {} 构建完成，共 {} 个id，耗时 {} ms", keyPrefix, loaded.get(), System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            // 构建失败时继续使用旧的过滤器（首次构建失败则放行所有请求），不影响正常查询
+            log.error("布隆过滤器 {} 构建失败", keyPrefix, e);
+        } finally {
+            registration.building = null;
+        }
+    }
+
+    private void onRemotePut(String key) {
+        for (Map.Entry<String, Registration> entry : registrations.entrySet()) {
+            if (key.startsWith(entry.getKey())) {
+                Long id = toLong(key.substring(entry.getKey().length()));
+                if (id != null) {
+                    entry.getValue().put(id);
+                }
+                return;
+            }
+        }
+    }
+
+    private static Long toLong(Object id) {
+        if (id instanceof Number) {
+            return ((Number) id).longValue();
+        }
+        String str = id.toString();
+        return NumberUtil.isLong(str) ? Long.valueOf(str) : null;
+    }
+
+    private static final class Registration {
+        /**
+         * 正在使用的过滤器，首次构建完成前为 null
+         */
+        private volatile ExistenceFilter filter;
+        /**
+         * 正在构建的过滤器，构建完成后替换 filter
+         */
+        private volatile ExistenceFilter building;
+
+        void put(long id) {
+            // 先读 building 再读 filter：读到 building 为 null 时，要么构建尚未开始（扫描能读到这条数据），要么已经切换完成
+            ExistenceFilter next = building;
+            ExistenceFilter current = filter;
+            if (next != null) {
+                next.put(id);
+            }
+            if (current != null && current != next) {
+                current.put(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 基于 hutool 的 JSON 编解码，与原有缓存格式兼容
+ * @date 2023/3/16 14:25
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        return decode(bytes, 0, type);
+    }
+
+    @Override
+    public byte[] encodeWithExpire(Object value, long expireAtMillis, long rebuildCostMillis) {
+        RedisData redisData = RedisData.forJson(value, expireAtMillis);
+        redisData.setRebuildCost(rebuildCostMillis);
+        return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public RedisData decodeWithExpire(byte[] bytes, Class<?> type) {
+        RedisData redisData = JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), RedisData.class);
+        Object data = redisData.getData();
+        redisData.setData(data instanceof JSONArray ? toArray((JSONArray) data, type) : JSONUtil.toBean((JSONObject) data, type));
+        return redisData;
+    }
+
+    <R> R decode(byte[] bytes, int offset, Class<R> type) {
+        String json = new String(bytes, offset, bytes.length - offset, StandardCharsets.UTF_8);
+        return type.isArray() ? toArray(JSONUtil.parseArray(json), type) : JSONUtil.toBean(json, type);
+    }
+
+    /**
+     * 数组类型（如 Voucher[]）按元素类型逐个转换
+     */
+    private static <R> R toArray(JSONArray array, Class<R> type) {
+        List<?> list = array.toList(type.getComponentType());
+        return type.cast(list.toArray((Object[]) Array.newInstance(type.getComponentType(), list.size())));
+    }
+}
@@ -0,0 +1,198 @@
+package com.hmdp.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 进程内一级缓存（L1），按 key 前缀划分区域，每个区域有独立的条目上限、字节上限和 TTL
+ * @date 2023/3/12 15:20
+ */
+public class LocalCache {
+    // 每个区域拆成多个分段，分段内部使用 LRU 的 LinkedHashMap，降低锁竞争
+    private static final int SEGMENT_COUNT = 16;
+    // 每个条目的固定开销估算（对象头、引用、Entry 等）
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final Map<String, Region> regions = new ConcurrentHashMap<>();
+
+    /**
+     * @description: 为指定 key 前缀开启一级缓存
+     * @param: [keyPrefix, maxEntries, maxBytes, ttl, unit]
+     * @return: void
+     */
+    public void configure(String keyPrefix, int maxEntries, long maxBytes, long ttl, TimeUnit unit) {
+        regions.put(keyPrefix, new Region(maxEntries, maxBytes, unit.toMillis(ttl)));
+    }
+
+    /**
+     * @description: 判断 key 所在前缀是否开启了一级缓存
+     * @param: [key]
+     * @return: boolean
+     */
+    public boolean isEnabled(String key) {
+        return regionOf(key) != null;
+    }
+
+    /**
+     * @description: 读取一级缓存，未命中或已过期返回 null；空数组代表缓存的空值
+     * @param: [key]
+     * @return: byte[]
+     */
+    public byte[] get(String key) {
+        Region region = regionOf(key);
+        return region == null ? null : region.segmentOf(key).get(key);
+    }
+
+    /**
+     * @description: 获取 key 所在分段的失效版本号，读 Redis 前记录，写回一级缓存时校验
+     * @param: [key]
+     * @return: long
+     */
+    public long epoch(String key) {
+        Region region = regionOf(key);
+        return region == null ? 0L : region.segmentOf(key).epoch;
+    }
+
+    /**
+     * @description: 写入一级缓存；若读取期间该分段收到过失效通知（版本号变化），放弃写入，避免把旧值重新放回本地
+     * @param: [key, value, epoch, ttlMillis]
+     * @return: void
+     */
+    public void put(String key, byte[] value, long epoch, long ttlMillis) {
+        Region region = regionOf(key);
+        if (region == null || value == null) {
+            return;
+        }
+        long ttl = ttlMillis > 0 ? Math.min(ttlMillis, region.ttlMillis) : region.ttlMillis;
+        region.segmentOf(key).put(key, value, epoch, ttl);
+    }
+
+    /**
+     * @description: 写入一级缓存，使用区域默认 TTL
+     * @param: [key, value, epoch]
+     * @return: void
+     */
+    public void put(String key, byte[] value, long epoch) {
+        put(key, value, epoch, 0L);
+    }
+
+    /**
+     * @description: 删除本地一级缓存中的 key
+     * @param: [key]
+     * @return: void
+     */
+    public void evict(String key) {
+        Region region = regionOf(key);
+        if (region != null) {
+            region.segmentOf(key).evict(key);
+        }
+    }
+
+    private Region regionOf(String key) {
+        for (Map.Entry<String, Region> entry : regions.entrySet()) {
+            if (key.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static final class Region {
+        private final long ttlMillis;
+        private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+        Region(int maxEntries, long maxBytes, long ttlMillis) {
+            this.ttlMillis = ttlMillis;
+            int entriesPerSegment = Math.max(1, maxEntries / SEGMENT_COUNT);
+            long bytesPerSegment = Math.max(1L, maxBytes / SEGMENT_COUNT);
+            for (int i = 0; i < SEGMENT_COUNT; i++) {
+                segments[i] = new Segment(entriesPerSegment, bytesPerSegment);
+            }
+        }
+
+        Segment segmentOf(String key) {
+            int h = key.hashCode();
+            h ^= (h >>> 16);
+            return segments[h & (SEGMENT_COUNT - 1)];
+        }
+    }
+
+    private static final class Segment {
+        private final int maxEntries;
+        private final long maxBytes;
+        private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+        // 失效版本号，每次 evict 自增
+        private volatile long epoch;
+
+        Segment(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized byte[] get(String key) {
+            Entry entry = map.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireAt <= System.currentTimeMillis()) {
+                remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized void put(String key, byte[] value, long expectedEpoch, long ttlMillis) {
+            if (expectedEpoch != epoch) {
+                return;
+            }
+            int weight = weigh(key, value);
+            if (weight > maxBytes) {
+                return;
+            }
+            remove(key);
+            map.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis, weight));
+            bytes += weight;
+            // 超出条目数或字节上限时，按 LRU 顺序淘汰
+            Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+            while ((map.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+                Entry eldest = it.next().getValue();
+                bytes -= eldest.weight;
+                it.remove();
+            }
+        }
+
+        synchronized void evict(String key) {
+            epoch++;
+            remove(key);
+        }
+
+        private void remove(String key) {
+            Entry old = map.remove(key);
+            if (old != null) {
+                bytes -= old.weight;
+            }
+        }
+
+        private static int weigh(String key, byte[] value) {
+            return ENTRY_OVERHEAD + 2 * key.length() + value.length;
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] value;
+        private final long expireAt;
+        private final int weight;
+
+        Entry(byte[] value, long expireAt, int weight) {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.hmdp.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 压缩的倒排列表：升序 id 的差值按 varint 编码存入 byte[]，不可变；修改时生成新的列表
+ * @date 2023/3/27 16:30
+ */
+public final class PostingList {
+    private static final PostingList EMPTY = new PostingList(new byte[0], 0);
+
+    private final byte[] bytes;
+    private final int size;
+
+    private PostingList(byte[] bytes, int size) {
+        this.bytes = bytes;
+        this.size = size;
+    }
+
+    /**
+     * @description: 由 id 构建，前 size 个元素有效，无需有序，重复的 id 只保留一个
+     * @param: [ids, size]
+     * @return: com.hmdp.utils.PostingList
+     */
+    public static PostingList of(long[] ids, int size) {
+        long[] sorted = Arrays.copyOf(ids, size);
+        Arrays.sort(sorted);
+        byte[] buffer = new byte[size * 10];
+        int position = 0;
+        int count = 0;
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && sorted[i] == sorted[i - 1]) {
+                continue;
+            }
+            long delta = sorted[i] - previous;
+            previous = sorted[i];
+            // varint：每个字节 7 位，最高位为 1 表示后面还有字节
+            while ((delta & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            buffer[position++] = (byte) delta;
+            count++;
+        }
+        return count == 0 ? EMPTY : new PostingList(Arrays.copyOf(buffer, position), count);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @description: 压缩后占用的字节数
+     * @param: []
+     * @return: int
+     */
+    public int bytes() {
+        return bytes.length;
+    }
+
+    /**
+     * @description: 解码为升序数组
+     * @param: []
+     * @return: long[]
+     */
+    public long[] toArray() {
+        long[] ids = new long[size];
+        int position = 0;
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            previous += delta;
+            ids[i] = previous;
+        }
+        return ids;
+    }
+
+    /**
+     * @description: 去掉 removed 中的 id、再加入 added 中的 id 后的新列表
+     * @param: [removed, added, addedSize]
+     * @return: com.hmdp.utils.PostingList
+     */
+    public PostingList with(Set<Long> removed, long[] added, int addedSize) {
+        long[] ids = toArray();
+        long[] merged = new long[ids.length + addedSize];
+        int size = 0;
+        for (long id : ids) {
+            if (!removed.contains(id)) {
+                merged[size++] = id;
+            }
+        }
+        System.arraycopy(added, 0, merged, size, addedSize);
+        return of(merged, size + addedSize);
+    }
+
+    /**
+     * @description: 多个列表求交集，返回升序数组：从最短的开始，逐个二分过滤；没有列表时为空
+     * @param: [lists]
+     * @return: long[]
+     */
+    public static long[] intersect(List<PostingList> lists) {
+        if (lists.isEmpty()) {
+            return new long[0];
+        }
+        List<PostingList> sorted = new ArrayList<>(lists);
+        sorted.sort(Comparator.comparingInt(PostingList::size));
+        long[] result = sorted.get(0).toArray();
+        for (int i = 1; i < sorted.size() && result.length > 0; i++) {
+            long[] other = sorted.get(i).toArray();
+            int size = 0;
+            for (long id : result) {
+                if (Arrays.binarySearch(other, id) >= 0) {
+                    result[size++] = id;
+                }
+            }
+            result = Arrays.copyOf(result, size);
+        }
+        return result;
+    }
+}
@@ -8,16 +8,109 @@ public class RedisConstants {
 
     public static final Long CACHE_NULL_TTL = 2L;
 
-    public static final Long CACHE_SHOP_TTL = 30L;
+    public static final long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
     public static final String CACHE_SHOP_TYPE = "type:shop:";
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+    public static final long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final long CACHE_USER_TTL = 30L;
+    // 店铺优惠券列表（含秒杀库存，TTL 较短）
+    public static final String CACHE_SHOP_VOUCHER_KEY = "cache:voucher:shop:";
+    public static final long CACHE_SHOP_VOUCHER_TTL = 1L;
+
+    // 一级缓存（进程内）：商铺详情的条目上限、字节上限和 TTL（秒）
+    public static final int CACHE_SHOP_L1_MAX_ENTRIES = 5000;
+    public static final long CACHE_SHOP_L1_MAX_BYTES = 32L * 1024 * 1024;
+    public static final Long CACHE_SHOP_L1_TTL = 60L;
+    // 响应字节缓存（进程内）：条目上限、字节上限和 TTL（秒）
+    public static final int RESPONSE_CACHE_MAX_ENTRIES = 5000;
+    public static final long RESPONSE_CACHE_MAX_BYTES = 16L * 1024 * 1024;
+    public static final Long RESPONSE_CACHE_TTL = 60L;
+    // 实体版本号（用于 ETag）：Redis 中的 key 为 version: + 缓存 key；本地缓存的条目上限与 TTL（秒）
+    public static final String VERSION_KEY = "version:";
+    public static final int VERSION_LOCAL_MAX_ENTRIES = 10000;
+    public static final Long VERSION_LOCAL_TTL = 60L;
+    // @HmCached(l1 = true) 的前缀未单独配置一级缓存时使用的默认容量与 TTL（秒）
+    public static final int CACHE_L1_DEFAULT_MAX_ENTRIES = 1000;
+    public static final long CACHE_L1_DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+    public static final Long CACHE_L1_DEFAULT_TTL = 60L;
+    // 商铺逻辑过期缓存的提前刷新系数（0 表示关闭，1.0 为推荐值）
+    public static final double CACHE_SHOP_EARLY_REFRESH_BETA = 1.0;
+    // 热点 key 探测：滑动窗口 6 * 5 秒，每 4 次读取采样一次，窗口内估计 600 次以上晋升为热点，本地副本保留 3 秒
+    public static final int HOT_KEY_SKETCH_WIDTH = 4096;
+    public static final int HOT_KEY_WINDOW_SLOTS = 6;
+    public static final long HOT_KEY_SLOT_MILLIS = 5000L;
+    public static final int HOT_KEY_SAMPLE_RATE = 4;
+    public static final long HOT_KEY_THRESHOLD = 600L;
+    public static final int HOT_KEY_CAPACITY = 256;
+    public static final Long HOT_KEY_LOCAL_TTL = 3L;
+    // 自适应 TTL：抖动比例 ±10%，无访问时缩短到 0.5 倍，窗口内访问量达到热点阈值时延长到 2 倍
+    public static final double CACHE_TTL_JITTER_RATIO = 0.1;
+    public static final double CACHE_TTL_MIN_FACTOR = 0.5;
+    public static final double CACHE_TTL_MAX_FACTOR = 2.0;
+    public static final long CACHE_TTL_HOT_READS = HOT_KEY_THRESHOLD;
+    // hash 分桶存储：id / 桶大小 决定桶，桶 key 为 前缀 + bucket: + 桶号；桶大小需不超过 hash-max-listpack-entries（默认 128）
+    public static final String CACHE_HASH_BUCKET_INFIX = "bucket:";
+    public static final int CACHE_HASH_BUCKET_SIZE = 100;
+    // 缓存失效广播频道，各节点收到后删除本地一级缓存；延迟双删的第二次广播使用单独的频道，只关心数据变化的订阅方（本地索引）不必订阅
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String CACHE_INVALIDATE_REPEAT_CHANNEL = "cache:invalidate:repeat";
+
+    // 布隆过滤器新增 id 的广播频道与误判率
+    public static final String BLOOM_ADD_CHANNEL = "cache:bloom:add";
+    public static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+    public static final long BLOOM_REBUILD_INTERVAL = 30 * 60 * 1000L;
+
+    // 缓存重建线程数、队列容量与停机等待时间（秒）
+    public static final int REBUILD_THREADS = 10;
+    public static final int REBUILD_QUEUE_CAPACITY = 1000;
+    public static final long REBUILD_SHUTDOWN_TIMEOUT = 10L;
+
+    // 缓存失效管道：合并窗口（毫秒）、每批最多 key 数、延迟双删的延迟（毫秒，0 表示关闭）
+    public static final long INVALIDATE_BATCH_WINDOW_MILLIS = 20L;
+    public static final int INVALIDATE_BATCH_SIZE = 500;
+    public static final long INVALIDATE_DOUBLE_DELETE_DELAY_MILLIS = 500L;
+
+    // 启动预热：写线程数、每批条数、进度日志间隔（条）与时间预算（秒）
+    public static final int WARM_UP_THREADS = 4;
+    public static final int WARM_UP_BATCH_SIZE = 500;
+    public static final long WARM_UP_REPORT_INTERVAL = 10000L;
+    public static final long WARM_UP_TIME_BUDGET = 60L;
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    // 缓存重建互斥锁前缀，完整 key 为 lock: + 缓存 key
+    public static final String CACHE_LOCK_KEY = "lock:";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    // 秒杀订单消息队列（与 seckill.lua 中的 stream 名一致）与消费者组
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "orderGroup";
+    // 订单消费：阻塞读取时间、处理失败后重读 pending-list 的延迟、其他消费者的消息空闲多久后被认领、认领检查间隔与每次认领条数（毫秒 / 条）
+    public static final long SECKILL_ORDER_BLOCK_MILLIS = 2000L;
+    public static final long SECKILL_ORDER_RETRY_DELAY = 1000L;
+    public static final long SECKILL_ORDER_CLAIM_IDLE = 60 * 1000L;
+    public static final long SECKILL_ORDER_CLAIM_INTERVAL = 30 * 1000L;
+    public static final int SECKILL_ORDER_CLAIM_BATCH = 100;
+    // 售罄广播频道（消息为 +voucherId 或 -voucherId），以及本地售罄标记的有效期（毫秒，过期后放行一次请求到 Redis 重新确认）
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final long SECKILL_SOLD_OUT_RECHECK = 5000L;
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    // GEO 集合全量加载：临时 key 后缀、每批条数、互斥锁（多节点只有一个在加载或校验）与校验间隔（毫秒）
+    public static final String SHOP_GEO_STAGING_SUFFIX = ":loading";
+    public static final int SHOP_GEO_LOAD_BATCH_SIZE = 500;
+    public static final String SHOP_GEO_LOAD_LOCK_KEY = "lock:shop:geo:load";
+    public static final long SHOP_GEO_DRIFT_CHECK_INTERVAL = 10 * 60 * 1000L;
+    // 各节点增量同步过的店铺 id（set），全量加载 RENAME 之后按数据库重新同步其中的店铺；TTL（毫秒）在每次同步时刷新
+    public static final String SHOP_GEO_TOUCHED_KEY = "shop:geo:touched";
+    public static final long SHOP_GEO_TOUCHED_TTL = 60 * 60 * 1000L;
+    // 附近商铺结果窗口：key 为 shop:geo:window:{typeId}:{网格x}:{网格y}，TTL（秒）、首次查询的条数与网格边长（度，约 100 米）
+    public static final String SHOP_GEO_WINDOW_KEY = "shop:geo:window:";
+    public static final long SHOP_GEO_WINDOW_TTL = 60L;
+    public static final int SHOP_GEO_WINDOW_SIZE = 100;
+    public static final double SHOP_GEO_WINDOW_CELL_DEGREES = 0.001D;
     public static final String USER_SIGN_KEY = "sign:";
 }
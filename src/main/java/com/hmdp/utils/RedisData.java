@@ -1,11 +1,46 @@
 package com.hmdp.utils;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 @Data
 public class RedisData {
     private LocalDateTime expireTime; // 逻辑过期时间
     private Object data; // 存入redis的数据，不用对原有的数据进行修改
+    private Long rebuildCost; // 上一次重建缓存的耗时（毫秒），用于提前刷新
+    // 逻辑过期时间（epoch 毫秒），二进制编码直接读写该值，不参与 JSON 序列化
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient long expireAt;
+
+    public long expireAtMillis() {
+        if (expireAt == 0L && expireTime != null) {
+            expireAt = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        return expireAt;
+    }
+
+    public void expireAtMillis(long expireAtMillis) {
+        this.expireAt = expireAtMillis;
+    }
+
+    public long rebuildCostMillis() {
+        return rebuildCost == null ? 0L : rebuildCost;
+    }
+
+    /**
+     * JSON 格式仍以 LocalDateTime 存储，保持与旧数据兼容
+     */
+    public static RedisData forJson(Object data, long expireAtMillis) {
+        RedisData redisData = new RedisData();
+        redisData.setData(data);
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireAtMillis), ZoneId.systemDefault()));
+        return redisData;
+    }
 }
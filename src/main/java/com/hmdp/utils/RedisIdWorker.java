@@ -10,26 +10,52 @@ import java.time.format.DateTimeFormatter;
 /**
  * @author zjzjhd
  * @version 1.0
- * @description: TODO
+ * @description: 全局唯一 id：高位为相对 BEGIN_TIMESTAMP 的秒数，低 32 位为 Redis 中按天自增的序列号
  * @date 2023/2/24 14:52
  */
 @Component
 public class RedisIdWorker {
     private final static long BEGIN_TIMESTAMP = 1640995200L;
-    private final static long COUNT_BITS = 1640995200L;
-    private StringRedisTemplate stringRedisTemplate;
-
+    private final static long COUNT_BITS = 32;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+    private final StringRedisTemplate stringRedisTemplate;
 
+    public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
 
     public Long nextId(String keyPrefix) {
-        //时间戳
-        long nowSecond = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
-        long timestamp = nowSecond - BEGIN_TIMESTAMP;
+        LocalDateTime now = LocalDateTime.now();
         //序列号
-        String date = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
-
+        Long count = stringRedisTemplate.opsForValue().increment(counterKey(keyPrefix, now));
         // 拼接
+        return compose(timestamp(now), count);
+    }
+
+    /**
+     * @description: 时间戳部分：now 相对 BEGIN_TIMESTAMP 的秒数
+     * @param: [now]
+     * @return: long
+     */
+    public long timestamp(LocalDateTime now) {
+        return now.toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
+    }
+
+    /**
+     * @description: now 当天的序列号 key，序列号由调用方（例如 Lua 脚本）自增时使用
+     * @param: [keyPrefix, now]
+     * @return: java.lang.String
+     */
+    public String counterKey(String keyPrefix, LocalDateTime now) {
+        return "icr:" + keyPrefix + ":" + now.format(DATE_FORMATTER);
+    }
+
+    /**
+     * @description: 由时间戳与序列号拼接 id
+     * @param: [timestamp, count]
+     * @return: long
+     */
+    public static long compose(long timestamp, long count) {
         return timestamp << COUNT_BITS | count;
     }
 }
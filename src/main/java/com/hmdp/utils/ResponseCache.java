@@ -0,0 +1,135 @@
+package com.hmdp.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.Result;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 响应字节缓存：缓存接口最终输出的 Result JSON（UTF-8）及其 gzip 版本，命中时直接写入输出流，
+ * 省去反序列化实体、包装 Result 和 Jackson 序列化。以实体的缓存 key 为 key，随同一个失效广播一起删除
+ * @date 2023/3/25 14:30
+ */
+@Component
+public class ResponseCache {
+    private static final String GZIP_SUFFIX = "#gzip";
+    private static final String GZIP = "gzip";
+
+    private final LocalCache localCache = new LocalCache();
+    private final ObjectMapper objectMapper;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    public ResponseCache(ObjectMapper objectMapper, RedisMessageListenerContainer listenerContainer) {
+        this.objectMapper = objectMapper;
+        this.listenerContainer = listenerContainer;
+        localCache.configure(CACHE_SHOP_KEY, RESPONSE_CACHE_MAX_ENTRIES, RESPONSE_CACHE_MAX_BYTES, RESPONSE_CACHE_TTL, TimeUnit.SECONDS);
+        // 店铺类型列表只有一个 key（及其 gzip 版本）
+        localCache.configure(CACHE_SHOP_TYPE, 2, RESPONSE_CACHE_MAX_BYTES, RESPONSE_CACHE_TTL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @description: 订阅缓存失效广播，实体缓存失效时一并删除响应字节
+     * @param: []
+     * @return: void
+     */
+    @PostConstruct
+    public void subscribeInvalidation() {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> evict(new String(message.getBody(), StandardCharsets.UTF_8)),
+                Arrays.asList(new ChannelTopic(CACHE_INVALIDATE_CHANNEL), new ChannelTopic(CACHE_INVALIDATE_REPEAT_CHANNEL)));
+    }
+
+    /**
+     * @description: 输出 key 对应的响应：命中时直接写出缓存的字节，未命中时执行 loader 并缓存成功的结果；客户端支持时输出 gzip
+     * @param: [key, request, response, loader]
+     * @return: void
+     */
+    public void write(String key, HttpServletRequest request, HttpServletResponse response, Supplier<Result> loader) throws IOException {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains(GZIP);
+        byte[] body = gzip ? localCache.get(key + GZIP_SUFFIX) : localCache.get(key);
+        if (body == null) {
+            body = load(key, gzip, loader);
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * @description: 删除 key 对应的响应字节（含 gzip 版本）
+     * @param: [key]
+     * @return: void
+     */
+    public void evict(String key) {
+        localCache.evict(key);
+        localCache.evict(key + GZIP_SUFFIX);
+    }
+
+    private byte[] load(String key, boolean gzip, Supplier<Result> loader) {
+        // 先记录失效版本号，期间收到失效通知则不写入
+        long epoch = localCache.epoch(key);
+        long gzipEpoch = localCache.epoch(key + GZIP_SUFFIX);
+        byte[] plain = localCache.get(key);
+        boolean success = true;
+        if (plain == null) {
+            Result result = loader.get();
+            success = Boolean.TRUE.equals(result.getSuccess());
+            plain = serialize(result);
+            if (success) {
+                localCache.put(key, plain, epoch);
+            }
+        }
+        if (!gzip) {
+            return plain;
+        }
+        byte[] compressed = gzip(plain);
+        if (success) {
+            localCache.put(key + GZIP_SUFFIX, compressed, gzipEpoch);
+        }
+        return compressed;
+    }
+
+    private byte[] serialize(Result result) {
+        try {
+            return objectMapper.writeValueAsBytes(result);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("响应序列化失败", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] plain) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(plain.length / 2 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(plain);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,113 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 可扩容的布隆过滤器：当前分层写满后追加一层容量翻倍、误判率减半的新分层，保证新增 id 后整体误判率仍然有界
+ * @date 2023/3/14 09:45
+ */
+public class ScalableBloomFilter implements ExistenceFilter {
+    // 每新增一层，误判率乘以该系数
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private final double falsePositiveRate;
+    private volatile Stage[] stages;
+
+    public ScalableBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+        this.stages = new Stage[]{new Stage(Math.max(expectedInsertions, 1024L), falsePositiveRate)};
+    }
+
+    @Override
+    public boolean mightContain(long id) {
+        long h1 = mix(id);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1L;
+        for (Stage stage : stages) {
+            if (stage.mightContain(h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void put(long id) {
+        if (mightContain(id)) {
+            return;
+        }
+        long h1 = mix(id);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1L;
+        Stage[] current = stages;
+        Stage last = current[current.length - 1];
+        last.put(h1, h2);
+        if (last.count.incrementAndGet() >= last.capacity) {
+            grow(last);
+        }
+    }
+
+    private synchronized void grow(Stage full) {
+        Stage[] current = stages;
+        if (current[current.length - 1] != full) {
+            return;
+        }
+        Stage[] next = new Stage[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        double rate = falsePositiveRate * Math.pow(TIGHTENING_RATIO, current.length);
+        next[current.length] = new Stage(full.capacity * 2, rate);
+        stages = next;
+    }
+
+    /**
+     * splitmix64 混淆，使连续的自增 id 也能均匀分布
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Stage {
+        private final long capacity;
+        private final long bitSize;
+        private final int hashCount;
+        private final AtomicLongArray bits;
+        private final AtomicLong count = new AtomicLong();
+
+        Stage(long capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            // m = -n * ln(p) / (ln2)^2，k = m / n * ln2
+            long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bitSize = Math.max(64L, (m + 63) / 64 * 64);
+            this.hashCount = Math.max(1, (int) Math.round((double) bitSize / capacity * Math.log(2)));
+            this.bits = new AtomicLongArray((int) (bitSize / 64));
+        }
+
+        boolean mightContain(long h1, long h2) {
+            for (int i = 0; i < hashCount; i++) {
+                long index = Long.remainderUnsigned(h1 + i * h2, bitSize);
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(long h1, long h2) {
+            for (int i = 0; i < hashCount; i++) {
+                long index = Long.remainderUnsigned(h1 + i * h2, bitSize);
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long old;
+                do {
+                    old = bits.get(word);
+                    if ((old & mask) != 0) {
+                        break;
+                    }
+                } while (!bits.compareAndSet(word, old, old | mask));
+            }
+        }
+    }
+}
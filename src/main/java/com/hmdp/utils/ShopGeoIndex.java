@@ -0,0 +1,187 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.SystemConstants.GEO_INDEX_CELL_DEGREES;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 按店铺类型划分的本地 GEO 索引（GeoGridIndex），启动时流式读取 tb_shop 的坐标构建，店铺写入后增量更新。
+ * 索引未就绪或未开启时 search 返回 null，由调用方回退到 Redis GEO（跨节点一致的数据源）
+ * @date 2023/3/26 16:10
+ */
+@Component
+public class ShopGeoIndex extends AbstractShopIndex {
+    @Value("${hmdp.geo.local-index:true}")
+    private boolean enabled;
+
+    private final Map<Long, GeoGridIndex> indexes = new ConcurrentHashMap<>();
+    // 每个已索引店铺的类型与坐标，增量更新时跳过没有变化的店铺；只在索引线程中读写
+    private final Map<Long, Location> locations = new HashMap<>();
+
+    public ShopGeoIndex() {
+        super("shop-geo-index");
+    }
+
+    @Override
+    protected boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @description: 查询 typeId 下距离 (x, y) 不超过 radiusMeters 的最近 limit 个店铺，按距离升序；索引不可用时返回 null
+     * @param: [typeId, x, y, radiusMeters, limit]
+     * @return: java.util.List<com.hmdp.utils.GeoGridIndex.Hit>
+     */
+    public List<GeoGridIndex.Hit> search(long typeId, double x, double y, double radiusMeters, int limit) {
+        if (!isReady()) {
+            return null;
+        }
+        GeoGridIndex index = indexes.get(typeId);
+        return index == null ? Collections.emptyList() : index.search(x, y, radiusMeters, limit);
+    }
+
+    /**
+     * @description: 各类型的店铺数
+     * @param: []
+     * @return: java.util.Map<java.lang.String,java.lang.Object>
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new TreeMap<>();
+        stats.put("ready", isReady());
+        stats.put("pending", pendingCount());
+        indexes.forEach((typeId, index) -> stats.put("type:" + typeId, index.size()));
+        return stats;
+    }
+
+    @Override
+    protected Cursor<Shop> scan() {
+        return shopMapper.scanLocations();
+    }
+
+    @Override
+    protected void build(Iterable<Shop> shops) {
+        Map<Long, Points> points = new HashMap<>();
+        locations.clear();
+        for (Shop shop : shops) {
+            if (hasLocation(shop)) {
+                points.computeIfAbsent(shop.getTypeId(), k -> new Points()).add(shop);
+                locations.put(shop.getId(), new Location(shop));
+            }
+        }
+        points.forEach((typeId, p) -> indexes.put(typeId, p.build()));
+    }
+
+    /**
+     * 跳过类型和坐标都没有变化的店铺（如只修改了名称），其余店铺从原类型中移除、再加入当前所属类型；
+     * 只重建涉及的类型，每个类型只重建一次
+     */
+    @Override
+    protected void apply(Set<Long> ids, List<Shop> shops) {
+        Map<Long, Location> current = new HashMap<>();
+        for (Shop shop : shops) {
+            if (hasLocation(shop)) {
+                current.put(shop.getId(), new Location(shop));
+            }
+        }
+        Set<Long> changed = new HashSet<>();
+        Set<Long> typeIds = new HashSet<>();
+        for (Long id : ids) {
+            Location before = locations.get(id);
+            Location after = current.get(id);
+            if (Objects.equals(before, after)) {
+                continue;
+            }
+            changed.add(id);
+            if (before != null) {
+                typeIds.add(before.typeId);
+            }
+            if (after != null) {
+                typeIds.add(after.typeId);
+                locations.put(id, after);
+            } else {
+                locations.remove(id);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        Map<Long, Points> added = new HashMap<>();
+        for (Shop shop : shops) {
+            if (changed.contains(shop.getId()) && hasLocation(shop)) {
+                added.computeIfAbsent(shop.getTypeId(), k -> new Points()).add(shop);
+            }
+        }
+        for (Long typeId : typeIds) {
+            GeoGridIndex index = indexes.getOrDefault(typeId, GeoGridIndex.empty(GEO_INDEX_CELL_DEGREES));
+            Points p = added.get(typeId);
+            indexes.put(typeId, p == null ? index.with(changed, new long[0], new double[0], new double[0], 0)
+                    : index.with(changed, p.ids, p.xs, p.ys, p.size));
+        }
+    }
+
+    private static boolean hasLocation(Shop shop) {
+        return shop.getTypeId() != null && shop.getX() != null && shop.getY() != null;
+    }
+
+    /**
+     * 店铺的类型与坐标
+     */
+    private static final class Location {
+        private final long typeId;
+        private final double x;
+        private final double y;
+
+        Location(Shop shop) {
+            this.typeId = shop.getTypeId();
+            this.x = shop.getX();
+            this.y = shop.getY();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Location)) {
+                return false;
+            }
+            Location other = (Location) o;
+            return typeId == other.typeId && Double.compare(x, other.x) == 0 && Double.compare(y, other.y) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(typeId, x, y);
+        }
+    }
+
+    /**
+     * 构建索引用的可增长基本类型数组
+     */
+    private static final class Points {
+        private long[] ids = new long[64];
+        private double[] xs = new double[64];
+        private double[] ys = new double[64];
+        private int size;
+
+        void add(Shop shop) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            ids[size] = shop.getId();
+            xs[size] = shop.getX();
+            ys[size++] = shop.getY();
+        }
+
+        GeoGridIndex build() {
+            return GeoGridIndex.build(GEO_INDEX_CELL_DEGREES, ids, xs, ys, size);
+        }
+    }
+}
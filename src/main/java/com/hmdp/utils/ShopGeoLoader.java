@@ -0,0 +1,278 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.ShopTypeMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 店铺 GEO 集合（shop:geo:{typeId}）的维护：全量加载流式读取 tb_shop，按类型分组后分批 pipeline GEOADD 到临时 key，
+ * 读完后 RENAME 覆盖正式 key，读请求不会看到加载了一半的集合；店铺新增、移动、换类型在事务提交后增量 GEOADD / ZREM，
+ * 并把店铺 id 记入 Redis 中的 shop:geo:touched，加载在 RENAME 之后重新同步其中的店铺（包括其他节点在加载期间修改的）；
+ * 定时比较各类型的成员数与数据库，不一致时重新加载该类型。加载与校验用分布式锁保证同一时间只有一个节点执行
+ * @date 2023/3/28 15:30
+ */
+@Slf4j
+@Component
+public class ShopGeoLoader {
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private ShopTypeMapper shopTypeMapper;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private PlatformTransactionManager transactionManager;
+    @Resource
+    private RedissonClient redissonClient;
+
+    private volatile boolean loading;
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong drifts = new AtomicLong();
+    private volatile Map<Long, long[]> lastDriftCheck = Collections.emptyMap();
+
+    /**
+     * @description: 全量加载所有类型，返回写入的店铺数；其他节点正在加载时返回 -1
+     * @param: []
+     * @return: long
+     */
+    public long reloadAll() {
+        return reload(null);
+    }
+
+    /**
+     * @description: 加载指定类型（typeId 为 null 时加载全部类型），返回写入的店铺数；其他节点正在加载时返回 -1
+     * @param: [typeId]
+     * @return: long
+     */
+    public long reload(Long typeId) {
+        RLock lock = redissonClient.getLock(SHOP_GEO_LOAD_LOCK_KEY);
+        if (!lock.tryLock()) {
+            return -1;
+        }
+        try {
+            return load(typeId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @description: 店铺写入后同步 GEO 集合：当前线程处于事务中时在提交后执行；oldTypeId 为修改前的类型，新增时传 null
+     * @param: [id, oldTypeId]
+     * @return: void
+     */
+    public void syncAfterCommit(Long id, Long oldTypeId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    sync(id, oldTypeId == null ? Collections.emptySet() : Collections.singleton(oldTypeId));
+                }
+            });
+        } else {
+            sync(id, oldTypeId == null ? Collections.emptySet() : Collections.singleton(oldTypeId));
+        }
+    }
+
+    /**
+     * @description: 定时校验：各类型 GEO 集合的成员数与数据库中有坐标的店铺数不一致时重新加载该类型
+     * @param: []
+     * @return: void
+     */
+    @Scheduled(initialDelay = SHOP_GEO_DRIFT_CHECK_INTERVAL, fixedDelay = SHOP_GEO_DRIFT_CHECK_INTERVAL)
+    public void checkDrift() {
+        RLock lock = redissonClient.getLock(SHOP_GEO_LOAD_LOCK_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            Map<Long, Long> expected = new TreeMap<>();
+            for (Map<String, Object> row : shopMapper.countLocationsByType()) {
+                expected.put(((Number) row.get("typeId")).longValue(), ((Number) row.get("total")).longValue());
+            }
+            for (ShopType type : shopTypeMapper.selectList(null)) {
+                expected.putIfAbsent(type.getId(), 0L);
+            }
+            List<Long> typeIds = new ArrayList<>(expected.keySet());
+            List<Object> actual = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                typeIds.forEach(typeId -> stringConnection.zCard(SHOP_GEO_KEY + typeId));
+                return null;
+            });
+            Map<Long, long[]> result = new TreeMap<>();
+            for (int i = 0; i < typeIds.size(); i++) {
+                Long typeId = typeIds.get(i);
+                long count = actual.get(i) == null ? 0L : ((Number) actual.get(i)).longValue();
+                result.put(typeId, new long[]{expected.get(typeId), count});
+                if (count != expected.get(typeId)) {
+                    drifts.incrementAndGet();
+                    log.warn("店铺 GEO 集合与数据库不一致，typeId = {}，数据库 {} 条，Redis {} 条，重新加载", typeId, expected.get(typeId), count);
+                    load(typeId);
+                }
+            }
+            lastDriftCheck = result;
+        } catch (Exception e) {
+            log.error("店铺 GEO 集合校验失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @description: 加载次数、发现不一致的次数与最近一次校验结果（类型 -> [数据库条数, Redis 条数]）
+     * @param: []
+     * @return: java.util.Map<java.lang.String,java.lang.Object>
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("loading", loading);
+        stats.put("loads", loads.get());
+        stats.put("drifts", drifts.get());
+        stats.put("lastDriftCheck", lastDriftCheck);
+        return stats;
+    }
+
+    private long load(Long typeId) {
+        loading = true;
+        // 此前同步过的店铺已提交到数据库，会被接下来的流式读取读到
+        stringRedisTemplate.unlink(SHOP_GEO_TOUCHED_KEY);
+        long begin = System.currentTimeMillis();
+        // 已开始写入临时 key 的类型
+        Set<Long> staged = new HashSet<>();
+        AtomicLong count = new AtomicLong();
+        try {
+            TransactionTemplate template = new TransactionTemplate(transactionManager);
+            template.setReadOnly(true);
+            template.executeWithoutResult(status -> {
+                try (Cursor<Shop> cursor = typeId == null ? shopMapper.scanLocations() : shopMapper.scanLocationsByType(typeId)) {
+                    List<Shop> batch = new ArrayList<>(SHOP_GEO_LOAD_BATCH_SIZE);
+                    for (Shop shop : cursor) {
+                        if (shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+                            batch.add(shop);
+                        }
+                        if (batch.size() >= SHOP_GEO_LOAD_BATCH_SIZE) {
+                            count.addAndGet(writeBatch(batch, staged));
+                            batch.clear();
+                        }
+                    }
+                    count.addAndGet(writeBatch(batch, staged));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            // 没有店铺的类型直接删除正式 key
+            Set<Long> empty = new HashSet<>();
+            if (typeId != null) {
+                empty.add(typeId);
+            } else {
+                shopTypeMapper.selectList(null).forEach(type -> empty.add(type.getId()));
+            }
+            empty.removeAll(staged);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                staged.forEach(id -> stringConnection.rename(SHOP_GEO_KEY + id + SHOP_GEO_STAGING_SUFFIX, SHOP_GEO_KEY + id));
+                empty.forEach(id -> stringConnection.unlink(SHOP_GEO_KEY + id));
+                return null;
+            });
+        } finally {
+            loading = false;
+        }
+        // 加载期间任一节点修改过的店铺可能被 RENAME 用旧数据覆盖，按数据库的最新值重新同步
+        Set<Long> typeIds = new HashSet<>(staged);
+        if (typeId != null) {
+            typeIds.add(typeId);
+        }
+        Set<String> touched = stringRedisTemplate.opsForSet().members(SHOP_GEO_TOUCHED_KEY);
+        if (touched != null && !touched.isEmpty()) {
+            stringRedisTemplate.opsForSet().remove(SHOP_GEO_TOUCHED_KEY, touched.toArray());
+            for (String id : touched) {
+                sync(Long.valueOf(id), typeIds);
+            }
+        }
+        loads.incrementAndGet();
+        log.info("店铺 GEO 集合加载完成，typeId = {}，共 {} 条，耗时 {} ms", typeId == null ? "全部" : typeId, count.get(), System.currentTimeMillis() - begin);
+        return count.get();
+    }
+
+    /**
+     * 一批店铺按类型分组后一次 pipeline 写入临时 key；某个类型第一次出现时先删除可能残留的临时 key
+     */
+    private int writeBatch(List<Shop> shops, Set<Long> staged) {
+        if (shops.isEmpty()) {
+            return 0;
+        }
+        Map<Long, List<RedisGeoCommands.GeoLocation<String>>> locations = new HashMap<>();
+        for (Shop shop : shops) {
+            locations.computeIfAbsent(shop.getTypeId(), k -> new ArrayList<>())
+                    .add(new RedisGeoCommands.GeoLocation<>(shop.getId().toString(), new Point(shop.getX(), shop.getY())));
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            locations.forEach((typeId, list) -> {
+                String staging = SHOP_GEO_KEY + typeId + SHOP_GEO_STAGING_SUFFIX;
+                if (staged.add(typeId)) {
+                    stringConnection.unlink(staging);
+                }
+                stringConnection.geoAdd(staging, list);
+            });
+            return null;
+        });
+        return shops.size();
+    }
+
+    /**
+     * 按数据库的最新值同步一个店铺：从 removeFrom 中其他类型的集合删除，有坐标时写入当前类型的集合（GEOADD 会覆盖旧坐标），
+     * 并记入 shop:geo:touched（不知道其他节点是否正在加载，总是记录）
+     */
+    private void sync(Long id, Set<Long> removeFrom) {
+        try {
+            Shop shop = shopMapper.selectById(id);
+            boolean located = shop != null && shop.getTypeId() != null && shop.getX() != null && shop.getY() != null;
+            String member = id.toString();
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                // 先于 GEO 写入记录：写入早于 RENAME 时，记录一定早于加载之后的读取
+                stringConnection.sAdd(SHOP_GEO_TOUCHED_KEY, member);
+                stringConnection.pExpire(SHOP_GEO_TOUCHED_KEY, SHOP_GEO_TOUCHED_TTL);
+                for (Long typeId : removeFrom) {
+                    if (!located || !typeId.equals(shop.getTypeId())) {
+                        stringConnection.zRem(SHOP_GEO_KEY + typeId, member);
+                    }
+                }
+                if (located) {
+                    stringConnection.geoAdd(SHOP_GEO_KEY + shop.getTypeId(), new Point(shop.getX(), shop.getY()), member);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // 同步失败时由定时校验兜底
+            log.error("店铺 GEO 同步失败，id = {}", id, e);
+        }
+    }
+}
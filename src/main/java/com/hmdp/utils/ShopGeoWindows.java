@@ -0,0 +1,249 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 附近商铺的结果窗口：把坐标量化到约 100 米的网格，以网格中心为圆心查询一次按距离排序的 (id, 距离) 列表，
+ * 以 (typeId, 网格) 为 key 短期缓存在 Redis 中（二进制）。翻页只需在窗口中二分定位，不再重复执行 GEO 查询；
+ * 窗口不够时按两倍条数重新查询。游标记录窗口所在网格与上一页最后一条的 (距离, id)，对客户端不透明；
+ * 窗口同时记录查询时实际使用的半径
+ * @date 2023/3/27 10:20
+ */
+@Component
+public class ShopGeoWindows {
+    private static final int CURSOR_BYTES = Long.BYTES * 4;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * @description: 坐标（度）量化后的网格编号
+     * @param: [degrees]
+     * @return: long
+     */
+    public static long quantize(double degrees) {
+        return (long) Math.floor(degrees / SHOP_GEO_WINDOW_CELL_DEGREES);
+    }
+
+    /**
+     * @description: 网格中心的坐标（度）
+     * @param: [cell]
+     * @return: double
+     */
+    public static double center(long cell) {
+        return (cell + 0.5D) * SHOP_GEO_WINDOW_CELL_DEGREES;
+    }
+
+    /**
+     * @description: 查询窗口，保证至少包含 minSize 条（或全部结果）；缓存没有或条数不够时调用 searcher(limit) 查询最近的 limit 条并写回缓存
+     * @param: [typeId, cellX, cellY, minSize, searcher]
+     * @return: com.hmdp.utils.ShopGeoWindows.Window
+     */
+    public Window get(long typeId, long cellX, long cellY, int minSize, IntFunction<Window> searcher) {
+        String key = SHOP_GEO_WINDOW_KEY + typeId + ":" + cellX + ":" + cellY;
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+        Window window = decode(bytes);
+        if (window != null && (window.isComplete() || window.size() >= minSize)) {
+            return window;
+        }
+        int limit = Math.max(SHOP_GEO_WINDOW_SIZE, window == null ? 0 : window.size() * 2);
+        while (limit < minSize) {
+            limit *= 2;
+        }
+        window = searcher.apply(limit);
+        byte[] value = window.encode();
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.stringCommands()
+                .set(rawKey, value, Expiration.from(SHOP_GEO_WINDOW_TTL, TimeUnit.SECONDS), RedisStringCommands.SetOption.upsert()));
+        return window;
+    }
+
+    private static Window decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return Window.decode(bytes);
+        } catch (RuntimeException e) {
+            // 格式不兼容（如升级前写入的窗口），按未命中处理
+            return null;
+        }
+    }
+
+    /**
+     * @description: 生成游标：窗口所在网格与最后一条的 (距离, id)
+     * @param: [cellX, cellY, distance, id]
+     * @return: java.lang.String
+     */
+    public static String encodeCursor(long cellX, long cellY, double distance, long id) {
+        ByteBuffer buffer = ByteBuffer.allocate(CURSOR_BYTES);
+        buffer.putLong(cellX).putLong(cellY).putLong(Double.doubleToLongBits(distance)).putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @description: 解析游标，格式不正确时返回 null
+     * @param: [cursor]
+     * @return: com.hmdp.utils.ShopGeoWindows.Cursor
+     */
+    public static Cursor decodeCursor(String cursor) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (bytes.length != CURSOR_BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new Cursor(buffer.getLong(), buffer.getLong(), Double.longBitsToDouble(buffer.getLong()), buffer.getLong());
+    }
+
+    /**
+     * 游标内容
+     */
+    public static final class Cursor {
+        private final long cellX;
+        private final long cellY;
+        private final double distance;
+        private final long id;
+
+        Cursor(long cellX, long cellY, double distance, long id) {
+            this.cellX = cellX;
+            this.cellY = cellY;
+            this.distance = distance;
+            this.id = id;
+        }
+
+        public long getCellX() {
+            return cellX;
+        }
+
+        public long getCellY() {
+            return cellY;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+
+        public long getId() {
+            return id;
+        }
+    }
+
+    /**
+     * 按 (距离, id) 升序的结果窗口；radius 为查询使用的半径（米），complete 表示查询结果少于请求的条数，窗口之后没有更多结果
+     */
+    public static final class Window {
+        private final long[] ids;
+        private final double[] distances;
+        private final double radius;
+        private final boolean complete;
+
+        private Window(long[] ids, double[] distances, double radius, boolean complete) {
+            this.ids = ids;
+            this.distances = distances;
+            this.radius = radius;
+            this.complete = complete;
+        }
+
+        public Window(List<GeoGridIndex.Hit> hits, double radius, boolean complete) {
+            List<GeoGridIndex.Hit> sorted = new ArrayList<>(hits);
+            sorted.sort(Comparator.comparingDouble(GeoGridIndex.Hit::getDistance).thenComparingLong(GeoGridIndex.Hit::getId));
+            this.ids = new long[sorted.size()];
+            this.distances = new double[sorted.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = sorted.get(i).getId();
+                distances[i] = sorted.get(i).getDistance();
+            }
+            this.radius = radius;
+            this.complete = complete;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        public double getRadius() {
+            return radius;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public long idAt(int index) {
+            return ids[index];
+        }
+
+        public double distanceAt(int index) {
+            return distances[index];
+        }
+
+        /**
+         * @description: 第一条排在 (distance, id) 之后的下标
+         * @param: [distance, id]
+         * @return: int
+         */
+        public int positionAfter(double distance, long id) {
+            int low = 0;
+            int high = ids.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int cmp = Double.compare(distances[mid], distance);
+                if (cmp < 0 || (cmp == 0 && ids[mid] <= id)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        byte[] encode() {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + Double.BYTES + Integer.BYTES + ids.length * (Long.BYTES + Double.BYTES));
+            buffer.put((byte) (complete ? 1 : 0)).putDouble(radius).putInt(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                buffer.putLong(ids[i]).putDouble(distances[i]);
+            }
+            return buffer.array();
+        }
+
+        static Window decode(byte[] bytes) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            boolean complete = buffer.get() == 1;
+            double radius = buffer.getDouble();
+            int size = buffer.getInt();
+            long[] ids = new long[size];
+            double[] distances = new double[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = buffer.getLong();
+                distances[i] = buffer.getDouble();
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalStateException("结果窗口格式不正确");
+            }
+            return new Window(ids, distances, radius, complete);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ShopSuggestDTO;
+import com.hmdp.entity.Shop;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+import static com.hmdp.utils.SystemConstants.SUGGEST_TOP_K;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 店铺名称联想：以规范化（小写）后的名称建立前缀树，每个节点预先计算该前缀下按评分、评论数排序的前 K 个店铺，
+ * 查询只需沿前缀走到对应节点，耗时与前缀长度成正比。前缀树不可变，启动时批量构建；店铺写入后按路径复制只重建受影响的节点，
+ * 再原子替换根节点，读请求不加锁
+ * @date 2023/3/28 10:10
+ */
+@Component
+public class ShopSuggestIndex extends AbstractShopIndex {
+    private static final Comparator<Entry> RANKING = Comparator.comparingInt((Entry e) -> e.score).reversed()
+            .thenComparing(Comparator.comparingInt((Entry e) -> e.comments).reversed())
+            .thenComparingLong(e -> e.id);
+    private static final Node EMPTY = new Node(new char[0], new Node[0], new Entry[0], new Entry[0]);
+
+    @Value("${hmdp.search.local-index:true}")
+    private boolean enabled;
+
+    private volatile Node root = EMPTY;
+    // 各店铺当前在前缀树中的条目，只在索引线程中读写，用于改名或删除时找到旧路径
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    public ShopSuggestIndex() {
+        super("shop-suggest-index");
+    }
+
+    @Override
+    protected boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @description: 名称以 prefix 开头的前 K 个店铺；索引不可用时返回 null
+     * @param: [prefix]
+     * @return: java.util.List<com.hmdp.dto.ShopSuggestDTO>
+     */
+    public List<ShopSuggestDTO> suggest(String prefix) {
+        return isReady() ? lookup(prefix) : null;
+    }
+
+    /**
+     * 沿前缀走到对应节点，返回其前 K 个店铺；不检查索引状态
+     */
+    List<ShopSuggestDTO> lookup(String prefix) {
+        String key = normalize(prefix);
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        List<ShopSuggestDTO> result = new ArrayList<>(node.top.length);
+        for (Entry entry : node.top) {
+            result.add(new ShopSuggestDTO(entry.id, entry.name));
+        }
+        return result;
+    }
+
+    @Override
+    protected Cursor<Shop> scan() {
+        return shopMapper.scanTexts();
+    }
+
+    @Override
+    protected void build(Iterable<Shop> shops) {
+        Builder builder = new Builder();
+        for (Shop shop : shops) {
+            Entry entry = Entry.of(shop);
+            if (entry != null) {
+                entries.put(entry.id, entry);
+                builder.add(entry);
+            }
+        }
+        root = builder.freeze();
+    }
+
+    @Override
+    protected void apply(Set<Long> ids, List<Shop> shops) {
+        Node next = root;
+        for (Long id : ids) {
+            Entry old = entries.remove(id);
+            if (old != null) {
+                next = update(next, old.key, 0, old, true);
+            }
+        }
+        for (Shop shop : shops) {
+            Entry entry = Entry.of(shop);
+            if (entry != null) {
+                entries.put(entry.id, entry);
+                next = update(next, entry.key, 0, entry, false);
+            }
+        }
+        root = next == null ? EMPTY : next;
+    }
+
+    /**
+     * 复制 key 路径上的节点并重新计算它们的前 K 个；节点为空时返回 null
+     */
+    private static Node update(Node node, String key, int depth, Entry entry, boolean remove) {
+        if (node == null) {
+            node = EMPTY;
+        }
+        Entry[] own = node.own;
+        char[] labels = node.labels;
+        Node[] children = node.children;
+        if (depth == key.length()) {
+            List<Entry> list = new ArrayList<>(Arrays.asList(own));
+            list.removeIf(e -> e.id == entry.id);
+            if (!remove) {
+                list.add(entry);
+            }
+            own = list.toArray(new Entry[0]);
+        } else {
+            char c = key.charAt(depth);
+            int index = Arrays.binarySearch(labels, c);
+            Node child = update(index >= 0 ? children[index] : null, key, depth + 1, entry, remove);
+            if (index >= 0 && child != null) {
+                children = children.clone();
+                children[index] = child;
+            } else if (index >= 0) {
+                labels = remove(labels, index);
+                children = remove(children, index);
+            } else if (child != null) {
+                int insert = -index - 1;
+                labels = insert(labels, insert, c);
+                children = insert(children, insert, child);
+            }
+        }
+        if (own.length == 0 && children.length == 0) {
+            return null;
+        }
+        return new Node(labels, children, own, top(own, children));
+    }
+
+    private static Entry[] top(Entry[] own, Node[] children) {
+        List<Entry> candidates = new ArrayList<>(own.length + children.length * SUGGEST_TOP_K);
+        candidates.addAll(Arrays.asList(own));
+        for (Node child : children) {
+            candidates.addAll(Arrays.asList(child.top));
+        }
+        candidates.sort(RANKING);
+        return candidates.subList(0, Math.min(SUGGEST_TOP_K, candidates.size())).toArray(new Entry[0]);
+    }
+
+    private static char[] remove(char[] array, int index) {
+        char[] result = new char[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+
+    private static Node[] remove(Node[] array, int index) {
+        Node[] result = new Node[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+
+    private static char[] insert(char[] array, int index, char value) {
+        char[] result = new char[array.length + 1];
+        System.arraycopy(array, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        return result;
+    }
+
+    private static Node[] insert(Node[] array, int index, Node value) {
+        Node[] result = new Node[array.length + 1];
+        System.arraycopy(array, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        return result;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 不可变的前缀树节点：子节点按字符升序，own 为名称恰好到此结束的店铺，top 为子树中排名前 K 的店铺
+     */
+    private static final class Node {
+        private final char[] labels;
+        private final Node[] children;
+        private final Entry[] own;
+        private final Entry[] top;
+
+        Node(char[] labels, Node[] children, Entry[] own, Entry[] top) {
+            this.labels = labels;
+            this.children = children;
+            this.own = own;
+            this.top = top;
+        }
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(labels, c);
+            return index >= 0 ? children[index] : null;
+        }
+    }
+
+    /**
+     * 批量构建用的可变节点，构建完成后自底向上转换为不可变节点
+     */
+    private static final class Builder {
+        private final TreeMap<Character, Builder> children = new TreeMap<>();
+        private final List<Entry> own = new ArrayList<>(1);
+
+        void add(Entry entry) {
+            Builder node = this;
+            for (int i = 0; i < entry.key.length(); i++) {
+                node = node.children.computeIfAbsent(entry.key.charAt(i), k -> new Builder());
+            }
+            node.own.add(entry);
+        }
+
+        Node freeze() {
+            char[] labels = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder> child : children.entrySet()) {
+                labels[i] = child.getKey();
+                nodes[i++] = child.getValue().freeze();
+            }
+            Entry[] entries = own.toArray(new Entry[0]);
+            return new Node(labels, nodes, entries, top(entries, nodes));
+        }
+    }
+
+    /**
+     * 前缀树中的店铺：规范化后的名称（路径）、展示用的原名称与排序字段
+     */
+    private static final class Entry {
+        private final long id;
+        private final String key;
+        private final String name;
+        private final int score;
+        private final int comments;
+
+        private Entry(long id, String key, String name, int score, int comments) {
+            this.id = id;
+            this.key = key;
+            this.name = name;
+            this.score = score;
+            this.comments = comments;
+        }
+
+        static Entry of(Shop shop) {
+            String key = normalize(shop.getName());
+            if (key.isEmpty()) {
+                return null;
+            }
+            return new Entry(shop.getId(), key, shop.getName(),
+                    shop.getScore() == null ? 0 : shop.getScore(), shop.getComments() == null ? 0 : shop.getComments());
+        }
+    }
+}
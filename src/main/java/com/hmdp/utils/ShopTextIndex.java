@@ -0,0 +1,292 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 店铺名称与商圈的本地倒排索引：以字符为单位切分（中文一个汉字即一个字符），为每个字段建立相邻两个字符的 bigram
+ * 以及单字的倒排列表（PostingList 压缩存储）。查询时对关键字的全部 bigram 求交集得到候选，再用原文做子串校验，
+ * 语义与 LIKE '%关键字%'（不区分大小写）一致；排序与分页在内存中完成
+ * @date 2023/3/27 17:00
+ */
+@Component
+public class ShopTextIndex extends AbstractShopIndex {
+    private static final int FIELD_NAME = 0;
+    private static final int FIELD_AREA = 1;
+    private static final Comparator<Doc> RANKING = Comparator.comparingInt((Doc doc) -> doc.rank).reversed()
+            .thenComparing(Comparator.comparingInt((Doc doc) -> doc.score).reversed())
+            .thenComparing(Comparator.comparingInt((Doc doc) -> doc.comments).reversed())
+            .thenComparingLong(doc -> doc.id);
+
+    @Value("${hmdp.search.local-index:true}")
+    private boolean enabled;
+
+    private final Map<Long, Doc> docs = new ConcurrentHashMap<>();
+    private final Map<Long, PostingList> postings = new ConcurrentHashMap<>();
+
+    public ShopTextIndex() {
+        super("shop-text-index");
+    }
+
+    @Override
+    protected boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @description: 查询名称或商圈包含 keyword 的店铺，按匹配程度（名称前缀 > 名称 > 商圈）、评分、评论数排序后返回第 offset 条（小于 0 时按 0）起的 limit 个；
+     * 指定 lastId 时改为返回排序中 lastId 之后的 limit 个（游标翻页），lastId 已不在结果中时仍按 offset。索引不可用时返回 null
+     * @param: [keyword, offset, limit, lastId]
+     * @return: com.hmdp.utils.ShopTextIndex.SearchResult
+     */
+    public SearchResult search(String keyword, int offset, int limit, Long lastId) {
+        if (!isReady()) {
+            return null;
+        }
+        String query = normalize(keyword);
+        // 1. 两个字段分别求交集，合并候选
+        Set<Long> candidates = new HashSet<>();
+        for (int field : new int[]{FIELD_NAME, FIELD_AREA}) {
+            for (long id : intersect(queryTerms(field, query))) {
+                candidates.add(id);
+            }
+        }
+        // 2. 用原文校验并计算匹配程度
+        List<Doc> matched = new ArrayList<>(candidates.size());
+        for (Long id : candidates) {
+            Doc doc = docs.get(id);
+            if (doc == null) {
+                continue;
+            }
+            int rank = doc.name.startsWith(query) ? 3 : doc.name.contains(query) ? 2 : doc.area.contains(query) ? 1 : 0;
+            if (rank > 0) {
+                matched.add(doc.withRank(rank));
+            }
+        }
+        // 3. 排序并分页
+        matched.sort(RANKING);
+        offset = Math.max(0, offset);
+        if (lastId != null) {
+            for (int i = 0; i < matched.size(); i++) {
+                if (matched.get(i).id == lastId) {
+                    offset = i + 1;
+                    break;
+                }
+            }
+        }
+        List<Long> ids = new ArrayList<>(limit);
+        for (int i = offset; i < matched.size() && i < offset + limit; i++) {
+            ids.add(matched.get(i).id);
+        }
+        return new SearchResult(ids, matched.size());
+    }
+
+    /**
+     * @description: 店铺数、词项数与倒排列表压缩后的总字节数
+     * @param: []
+     * @return: java.util.Map<java.lang.String,java.lang.Object>
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new TreeMap<>();
+        stats.put("ready", isReady());
+        stats.put("pending", pendingCount());
+        stats.put("docs", docs.size());
+        stats.put("terms", postings.size());
+        long bytes = 0;
+        long entries = 0;
+        for (PostingList list : postings.values()) {
+            bytes += list.bytes();
+            entries += list.size();
+        }
+        stats.put("postingEntries", entries);
+        stats.put("postingBytes", bytes);
+        return stats;
+    }
+
+    @Override
+    protected Cursor<Shop> scan() {
+        return shopMapper.scanTexts();
+    }
+
+    @Override
+    protected void build(Iterable<Shop> shops) {
+        Map<Long, LongList> lists = new HashMap<>();
+        for (Shop shop : shops) {
+            Doc doc = Doc.of(shop);
+            docs.put(doc.id, doc);
+            for (long term : doc.terms()) {
+                lists.computeIfAbsent(term, k -> new LongList()).add(doc.id);
+            }
+        }
+        lists.forEach((term, list) -> postings.put(term, PostingList.of(list.values, list.size)));
+    }
+
+    /**
+     * 先从旧文本的词项中移除变化的店铺，再加入新文本的词项；每个受影响的倒排列表只重写一次
+     */
+    @Override
+    protected void apply(Set<Long> ids, List<Shop> shops) {
+        Set<Long> terms = new HashSet<>();
+        for (Long id : ids) {
+            Doc old = docs.get(id);
+            if (old != null) {
+                terms.addAll(old.terms());
+            }
+        }
+        Map<Long, LongList> added = new HashMap<>();
+        Map<Long, Doc> updated = new HashMap<>();
+        for (Shop shop : shops) {
+            Doc doc = Doc.of(shop);
+            updated.put(doc.id, doc);
+            for (long term : doc.terms()) {
+                added.computeIfAbsent(term, k -> new LongList()).add(doc.id);
+            }
+        }
+        terms.addAll(added.keySet());
+        for (Long term : terms) {
+            PostingList list = postings.getOrDefault(term, PostingList.of(new long[0], 0));
+            LongList add = added.getOrDefault(term, new LongList());
+            PostingList next = list.with(ids, add.values, add.size);
+            if (next.size() == 0) {
+                postings.remove(term);
+            } else {
+                postings.put(term, next);
+            }
+        }
+        for (Long id : ids) {
+            Doc doc = updated.get(id);
+            if (doc == null) {
+                docs.remove(id);
+            } else {
+                docs.put(id, doc);
+            }
+        }
+    }
+
+    /**
+     * 关键字全部词项的倒排列表求交集，有词项不存在时为空
+     */
+    private long[] intersect(Collection<Long> terms) {
+        List<PostingList> lists = new ArrayList<>(terms.size());
+        for (Long term : terms) {
+            PostingList list = postings.get(term);
+            if (list == null) {
+                return new long[0];
+            }
+            lists.add(list);
+        }
+        return PostingList.intersect(lists);
+    }
+
+    /**
+     * 关键字只有一个字符时用单字词项，否则用全部 bigram
+     */
+    private static Set<Long> queryTerms(int field, String query) {
+        Set<Long> terms = new HashSet<>();
+        if (query.length() == 1) {
+            terms.add(term(field, query.charAt(0), (char) 0));
+            return terms;
+        }
+        for (int i = 0; i + 1 < query.length(); i++) {
+            terms.add(term(field, query.charAt(i), query.charAt(i + 1)));
+        }
+        return terms;
+    }
+
+    private static void addTerms(Set<Long> terms, int field, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            terms.add(term(field, text.charAt(i), (char) 0));
+            if (i + 1 < text.length()) {
+                terms.add(term(field, text.charAt(i), text.charAt(i + 1)));
+            }
+        }
+    }
+
+    private static long term(int field, char first, char second) {
+        return ((long) field << 32) | ((long) first << 16) | second;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 查询结果：本页的店铺 id 与匹配总数
+     */
+    public static final class SearchResult {
+        private final List<Long> ids;
+        private final long total;
+
+        SearchResult(List<Long> ids, long total) {
+            this.ids = ids;
+            this.total = total;
+        }
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * 索引中的店铺：规范化后的名称、商圈与排序字段
+     */
+    private static final class Doc {
+        private final long id;
+        private final String name;
+        private final String area;
+        private final int score;
+        private final int comments;
+        private final int rank;
+
+        private Doc(long id, String name, String area, int score, int comments, int rank) {
+            this.id = id;
+            this.name = name;
+            this.area = area;
+            this.score = score;
+            this.comments = comments;
+            this.rank = rank;
+        }
+
+        static Doc of(Shop shop) {
+            return new Doc(shop.getId(), normalize(shop.getName()), normalize(shop.getArea()),
+                    shop.getScore() == null ? 0 : shop.getScore(), shop.getComments() == null ? 0 : shop.getComments(), 0);
+        }
+
+        Doc withRank(int rank) {
+            return new Doc(id, name, area, score, comments, rank);
+        }
+
+        Set<Long> terms() {
+            Set<Long> terms = new HashSet<>();
+            addTerms(terms, FIELD_NAME, name);
+            addTerms(terms, FIELD_AREA, area);
+            return terms;
+        }
+    }
+
+    /**
+     * 构建倒排列表用的可增长 long 数组
+     */
+    private static final class LongList {
+        private long[] values = new long[8];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
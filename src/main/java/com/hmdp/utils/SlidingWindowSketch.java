@@ -0,0 +1,111 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 滑动窗口计数草图（Count-Min Sketch）：窗口切成若干时间片，每片一个 depth * width 的计数矩阵，
+ * 时间片过期后整体清零，估计值为窗口内各时间片之和（只会高估，不会低估）
+ * @date 2023/3/19 14:10
+ */
+public class SlidingWindowSketch {
+    private static final int DEPTH = 4;
+
+    private final int width;
+    private final int mask;
+    private final long slotMillis;
+    private final AtomicIntegerArray[] slots;
+    private volatile long currentTick;
+
+    /**
+     * @param width      每行计数器个数，向上取整为 2 的幂
+     * @param slotCount  窗口内的时间片个数
+     * @param slotMillis 每个时间片的长度（毫秒）
+     */
+    public SlidingWindowSketch(int width, int slotCount, long slotMillis) {
+        this.width = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+        this.mask = this.width - 1;
+        this.slotMillis = slotMillis;
+        this.slots = new AtomicIntegerArray[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new AtomicIntegerArray(DEPTH * this.width);
+        }
+        this.currentTick = System.currentTimeMillis() / slotMillis;
+    }
+
+    /**
+     * @description: 推进到当前时间片，清空已滑出窗口的时间片
+     * @param: [nowMillis]
+     * @return: boolean 是否进入了新的时间片
+     */
+    public boolean advance(long nowMillis) {
+        long tick = nowMillis / slotMillis;
+        if (tick == currentTick) {
+            return false;
+        }
+        synchronized (this) {
+            if (tick == currentTick) {
+                return false;
+            }
+            // 从上一个时间片之后开始清理，最多清理一整圈
+            long from = Math.max(currentTick + 1, tick - slots.length + 1);
+            for (long t = from; t <= tick; t++) {
+                int index = (int) (t % slots.length);
+                AtomicIntegerArray counters = slots[index];
+                for (int i = 0; i < counters.length(); i++) {
+                    counters.set(i, 0);
+                }
+            }
+            currentTick = tick;
+            return true;
+        }
+    }
+
+    /**
+     * @description: 在当前时间片中为 key 增加计数，返回增加后整个窗口内的估计值
+     * @param: [key, count]
+     * @return: long
+     */
+    public long add(String key, int count) {
+        AtomicIntegerArray counters = slots[(int) (currentTick % slots.length)];
+        long h1 = mix(key.hashCode());
+        int h2 = (int) (h1 >>> 32) | 1;
+        for (int row = 0; row < DEPTH; row++) {
+            counters.addAndGet(row * width + (((int) h1 + row * h2) & mask), count);
+        }
+        return estimate(h1, h2);
+    }
+
+    /**
+     * @description: 窗口内 key 的估计访问次数
+     * @param: [key]
+     * @return: long
+     */
+    public long estimate(String key) {
+        long h1 = mix(key.hashCode());
+        return estimate(h1, (int) (h1 >>> 32) | 1);
+    }
+
+    private long estimate(long h1, int h2) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * width + (((int) h1 + row * h2) & mask);
+            long sum = 0;
+            for (AtomicIntegerArray counters : slots) {
+                sum += counters.get(index);
+            }
+            min = Math.min(min, sum);
+        }
+        return min;
+    }
+
+    /**
+     * splitmix64 混淆，避免 hashCode 相近的 key 落在同一列
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
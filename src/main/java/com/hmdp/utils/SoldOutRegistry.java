@@ -0,0 +1,113 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_RECHECK;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 本节点的秒杀券售罄标记：秒杀脚本返回库存不足后标记并广播到其他节点，之后的请求直接拒绝，不再访问 Redis；
+ * 补充库存时清除并广播。标记在 SECKILL_SOLD_OUT_RECHECK 后失效，放行请求到 Redis 重新确认，错过的清除广播最多影响这段时间
+ * @date 2023/3/30 10:30
+ */
+@Slf4j
+@Component
+public class SoldOutRegistry {
+    // 秒杀券 id -> 标记时间
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener((message, pattern) -> onMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    /**
+     * @description: 秒杀券在本节点是否已标记售罄；为 true 时计入拒绝次数
+     * @param: [voucherId]
+     * @return: boolean
+     */
+    public boolean isSoldOut(Long voucherId) {
+        Long markedAt = soldOut.get(voucherId);
+        if (markedAt == null || System.currentTimeMillis() - markedAt >= SECKILL_SOLD_OUT_RECHECK) {
+            return false;
+        }
+        rejected.increment();
+        return true;
+    }
+
+    /**
+     * @description: 标记售罄；本节点新标记（或原标记已失效）时广播到其他节点，并发的多个请求只广播一次
+     * @param: [voucherId]
+     * @return: void
+     */
+    public void markSoldOut(Long voucherId) {
+        long now = System.currentTimeMillis();
+        Long previous = soldOut.put(voucherId, now);
+        if (previous == null || now - previous >= SECKILL_SOLD_OUT_RECHECK) {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, "+" + voucherId);
+        }
+    }
+
+    /**
+     * @description: 补充库存后清除各节点的售罄标记
+     * @param: [voucherId]
+     * @return: void
+     */
+    public void clear(Long voucherId) {
+        soldOut.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, "-" + voucherId);
+    }
+
+    /**
+     * @description: 当前有效的售罄标记与直接拒绝的请求数
+     * @param: []
+     * @return: java.util.Map<java.lang.String,java.lang.Object>
+     */
+    public Map<String, Object> stats() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> stats = new TreeMap<>();
+        Map<Long, Long> active = new TreeMap<>();
+        soldOut.forEach((voucherId, markedAt) -> {
+            if (now - markedAt < SECKILL_SOLD_OUT_RECHECK) {
+                active.put(voucherId, markedAt);
+            }
+        });
+        stats.put("soldOut", active);
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+
+    private void onMessage(String body) {
+        try {
+            Long voucherId = Long.valueOf(body.substring(1));
+            if (body.charAt(0) == '+') {
+                soldOut.put(voucherId, System.currentTimeMillis());
+            } else {
+                soldOut.remove(voucherId);
+            }
+        } catch (RuntimeException e) {
+            log.warn("无法解析售罄广播：{}", body);
+        }
+    }
+}
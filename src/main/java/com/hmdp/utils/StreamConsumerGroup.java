@@ -0,0 +1,277 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: Redis Stream 消费者组的多线程消费：每个线程是一个独立命名的消费者（节点名-序号），用 XREADGROUP COUNT n
+ * 批量读取，整批处理完后用一次 XACK 确认处理成功的消息；处理失败的消息留在 pending-list 中，稍后由同一消费者重读。
+ * 0 号消费者定期认领其他消费者空闲过久的消息（节点宕机后留下的），消费者组在启动时创建
+ * @date 2023/3/29 15:40
+ */
+@Slf4j
+public class StreamConsumerGroup {
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String stream;
+    private final String group;
+    private final int batchSize;
+    private final BatchHandler handler;
+    private final List<Worker> workers = new ArrayList<>();
+    private final ExecutorService executor;
+    private volatile boolean running;
+
+    /**
+     * @param nodeName  本节点名称，消费者名为 nodeName-序号，重启后沿用同名消费者的 pending-list
+     * @param consumers 本节点的消费者（线程）数
+     * @param batchSize 每次读取的最大条数
+     */
+    public StreamConsumerGroup(StringRedisTemplate stringRedisTemplate, String stream, String group, String nodeName,
+                               int consumers, int batchSize, BatchHandler handler) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.stream = stream;
+        this.group = group;
+        this.batchSize = Math.max(1, batchSize);
+        this.handler = handler;
+        for (int i = 0; i < Math.max(1, consumers); i++) {
+            workers.add(new Worker(nodeName + "-" + i, i == 0));
+        }
+        AtomicInteger index = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers.size(), r -> {
+            Thread thread = new Thread(r, group + "-consumer-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @description: 创建消费者组（stream 不存在时一并创建，组已存在时忽略），再启动全部消费者
+     * @param: []
+     * @return: void
+     */
+    public void start() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(stream.getBytes(StandardCharsets.UTF_8), group, ReadOffset.from("0"), true));
+            log.info("已创建消费者组 {}，stream = {}", group, stream);
+        } catch (Exception e) {
+            if (!isBusyGroup(e)) {
+                throw e;
+            }
+        }
+        running = true;
+        workers.forEach(executor::submit);
+        log.info("stream {} 启动 {} 个消费者，每批最多 {} 条：{}", stream, workers.size(), batchSize,
+                workers.stream().map(worker -> worker.name).collect(Collectors.toList()));
+    }
+
+    /**
+     * @description: 停止消费，等待正在处理的批次完成（未确认的消息留在 pending-list 中，重启后由同名消费者继续处理）
+     * @param: []
+     * @return: void
+     */
+    public void stop() {
+        running = false;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SECKILL_ORDER_BLOCK_MILLIS * 2, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @description: 消费者组的积压与各消费者的指标：处理条数、失败条数、批次数、最近一批的条数与延迟（消息写入到处理完成的毫秒数）、
+     * pending-list 中的条数；其他节点的消费者只有 pending 条数
+     * @param: []
+     * @return: java.util.Map<java.lang.String,java.lang.Object>
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("stream", stream);
+        stats.put("group", group);
+        stats.put("length", stringRedisTemplate.opsForStream().size(stream));
+        PendingMessagesSummary summary = stringRedisTemplate.opsForStream().pending(stream, group);
+        Map<String, Long> pendingPerConsumer = summary == null ? Collections.emptyMap() : summary.getPendingMessagesPerConsumer();
+        stats.put("pending", summary == null ? 0L : summary.getTotalPendingMessages());
+        Map<String, Object> consumers = new TreeMap<>();
+        for (Worker worker : workers) {
+            Map<String, Object> consumer = worker.stats();
+            consumer.put("pending", pendingPerConsumer.getOrDefault(worker.name, 0L));
+            consumers.put(worker.name, consumer);
+        }
+        pendingPerConsumer.forEach((name, pending) -> consumers.putIfAbsent(name, Collections.singletonMap("pending", pending)));
+        stats.put("consumers", consumers);
+        return stats;
+    }
+
+    private static boolean isBusyGroup(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("BUSYGROUP")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 批量处理消息，返回处理成功（需要确认）的消息 id；未返回的消息留在 pending-list 中稍后重试
+     */
+    public interface BatchHandler {
+        Set<RecordId> handle(List<MapRecord<String, Object, Object>> records);
+    }
+
+    /**
+     * 一个消费者：先处理自己 pending-list 中的消息（启动时、处理失败后、认领后），再阻塞读取新消息
+     */
+    private final class Worker implements Runnable {
+        private final String name;
+        private final boolean claimer;
+        // 正在重读 pending-list 时为下一次读取的起始 id（不含），否则为 null
+        private String pendingFrom = "0";
+        private long pendingDueAt;
+        private long lastClaimAt;
+
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong claimed = new AtomicLong();
+        private volatile int lastBatchSize;
+        private volatile long lastLagMillis;
+
+        Worker(String name, boolean claimer) {
+            this.name = name;
+            this.claimer = claimer;
+        }
+
+        @Override
+        public void run() {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    long now = System.currentTimeMillis();
+                    if (claimer && now - lastClaimAt >= SECKILL_ORDER_CLAIM_INTERVAL) {
+                        lastClaimAt = now;
+                        claimIdle();
+                    }
+                    if (pendingFrom == null && pendingDueAt > 0 && now >= pendingDueAt) {
+                        pendingDueAt = 0;
+                        pendingFrom = "0";
+                    }
+                    List<MapRecord<String, Object, Object>> records;
+                    if (pendingFrom != null) {
+                        // XREADGROUP GROUP g c COUNT n STREAMS stream id：读取自己 pending-list 中 id 之后的消息
+                        records = read(StreamReadOptions.empty().count(batchSize), ReadOffset.from(pendingFrom));
+                        if (records == null || records.isEmpty()) {
+                            pendingFrom = null;
+                            continue;
+                        }
+                        pendingFrom = records.get(records.size() - 1).getId().getValue();
+                    } else {
+                        // XREADGROUP GROUP g c COUNT n BLOCK t STREAMS stream >
+                        records = read(StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(SECKILL_ORDER_BLOCK_MILLIS)),
+                                ReadOffset.lastConsumed());
+                        if (records == null || records.isEmpty()) {
+                            continue;
+                        }
+                    }
+                    process(records);
+                } catch (Exception e) {
+                    if (!running) {
+                        break;
+                    }
+                    log.error("消费者 {} 处理消息异常", name, e);
+                    pendingFrom = null;
+                    pendingDueAt = System.currentTimeMillis() + SECKILL_ORDER_RETRY_DELAY;
+                    try {
+                        Thread.sleep(SECKILL_ORDER_RETRY_DELAY);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        private List<MapRecord<String, Object, Object>> read(StreamReadOptions options, ReadOffset offset) {
+            return stringRedisTemplate.opsForStream().read(Consumer.from(group, name), options, StreamOffset.create(stream, offset));
+        }
+
+        /**
+         * 处理一批消息，处理成功的用一次 XACK 确认；有失败的消息时安排稍后重读 pending-list
+         */
+        private void process(List<MapRecord<String, Object, Object>> records) {
+            Set<RecordId> done = handler.handle(records);
+            if (!done.isEmpty()) {
+                stringRedisTemplate.opsForStream().acknowledge(stream, group, done.toArray(new RecordId[0]));
+            }
+            long now = System.currentTimeMillis();
+            batches.incrementAndGet();
+            processed.addAndGet(done.size());
+            lastBatchSize = records.size();
+            Long enqueuedAt = records.get(records.size() - 1).getId().getTimestamp();
+            lastLagMillis = enqueuedAt == null ? 0L : Math.max(0L, now - enqueuedAt);
+            if (done.size() < records.size()) {
+                failed.addAndGet(records.size() - done.size());
+                if (pendingDueAt == 0) {
+                    pendingDueAt = now + SECKILL_ORDER_RETRY_DELAY;
+                }
+            }
+        }
+
+        /**
+         * 认领其他消费者空闲超过 SECKILL_ORDER_CLAIM_IDLE 的消息（XCLAIM JUSTID），随后从自己的 pending-list 中处理
+         */
+        private void claimIdle() {
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(stream, group, Range.unbounded(), SECKILL_ORDER_CLAIM_BATCH);
+            List<RecordId> ids = new ArrayList<>();
+            for (PendingMessage message : pending) {
+                if (!name.equals(message.getConsumerName())
+                        && message.getElapsedTimeSinceLastDelivery().toMillis() >= SECKILL_ORDER_CLAIM_IDLE) {
+                    ids.add(message.getId());
+                }
+            }
+            if (ids.isEmpty()) {
+                return;
+            }
+            List<RecordId> result = stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection -> connection.streamCommands()
+                    .xClaimJustId(stream.getBytes(StandardCharsets.UTF_8), group, name,
+                            RedisStreamCommands.XClaimOptions.minIdleMs(SECKILL_ORDER_CLAIM_IDLE).ids(ids)));
+            int count = result == null ? 0 : result.size();
+            if (count > 0) {
+                claimed.addAndGet(count);
+                pendingFrom = "0";
+                log.warn("消费者 {} 认领了 {} 条空闲超过 {} ms 的消息", name, count, SECKILL_ORDER_CLAIM_IDLE);
+            }
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("processed", processed.get());
+            stats.put("failed", failed.get());
+            stats.put("batches", batches.get());
+            stats.put("claimed", claimed.get());
+            stats.put("lastBatchSize", lastBatchSize);
+            stats.put("lagMillis", lastLagMillis);
+            return stats;
+        }
+    }
+}
@@ -5,5 +5,12 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
-    public static final int TTL_THIRTY = 2;
+    public static final int TTL_THIRTY = 30;
+    // 附近商铺 k 近邻查询的初始半径（米）与每次扩大的倍数，最大半径由 hmdp.geo.max-radius 配置
+    public static final double SHOP_GEO_MIN_RADIUS = 500D;
+    public static final double SHOP_GEO_RADIUS_GROWTH = 2D;
+    // 店铺名称联想返回的条数
+    public static final int SUGGEST_TOP_K = 10;
+    // 本地 GEO 索引的网格边长（度），约 1 公里
+    public static final double GEO_INDEX_CELL_DEGREES = 0.01D;
 }
@@ -0,0 +1,95 @@
+package com.hmdp.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author zjzjhd
+ * @version 1.0
+ * @description: 自适应 TTL 策略（按 key 前缀配置）：根据 key 最近的访问量在 [minFactor, maxFactor] 之间缩放基础 TTL，
+ * 经常读取的 key 保留更久、很少读取的 key 尽早释放内存；再叠加有界的随机抖动，避免同时写入的 key 同时过期。
+ * 访问量由每次读取（包括一级缓存命中）调用 record 计入独立的滑动窗口草图：热点探测只统计穿透到 Redis 的读取，
+ * 一级缓存命中的热门 key 在那里几乎没有计数
+ * @date 2023/3/23 15:10
+ */
+public class TtlPolicies {
+    private final Map<String, Policy> policies = new ConcurrentHashMap<>();
+    private final SlidingWindowSketch sketch;
+    private final int sampleRate;
+
+    /**
+     * @param sketch     访问量的滑动窗口草图，只用于 TTL 策略
+     * @param sampleRate 采样比例，每 sampleRate 次读取记录一次
+     */
+    public TtlPolicies(SlidingWindowSketch sketch, int sampleRate) {
+        this.sketch = sketch;
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    /**
+     * @description: 为指定前缀配置策略
+     * @param: [keyPrefix, jitterRatio 抖动占基础 TTL 的比例, minFactor 无访问时的缩放系数, maxFactor 访问量达到 hotReads 时的缩放系数, hotReads]
+     * @return: com.hmdp.utils.TtlPolicies
+     */
+    public TtlPolicies register(String keyPrefix, double jitterRatio, double minFactor, double maxFactor, long hotReads) {
+        policies.put(keyPrefix, new Policy(jitterRatio, minFactor, maxFactor, hotReads));
+        return this;
+    }
+
+    /**
+     * @description: 记录一次读取（无论由哪一级缓存返回）；前缀未配置策略时忽略
+     * @param: [key]
+     * @return: void
+     */
+    public void record(String key) {
+        if (policyOf(key) == null) {
+            return;
+        }
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        sketch.advance(System.currentTimeMillis());
+        sketch.add(key, sampleRate);
+    }
+
+    /**
+     * @description: 计算 key 实际使用的 TTL；前缀未配置策略时原样返回
+     * @param: [key, baseMillis]
+     * @return: long
+     */
+    public long ttlMillis(String key, long baseMillis) {
+        Policy policy = policyOf(key);
+        if (policy == null || baseMillis <= 0) {
+            return baseMillis;
+        }
+        // 访问量线性映射到缩放系数，超过 hotReads 后不再增长
+        double heat = Math.min(1D, (double) sketch.estimate(key) / policy.hotReads);
+        double factor = policy.minFactor + (policy.maxFactor - policy.minFactor) * heat;
+        double jitter = 1D + policy.jitterRatio * ThreadLocalRandom.current().nextDouble(-1D, 1D);
+        return Math.max(1L, (long) (baseMillis * factor * jitter));
+    }
+
+    private Policy policyOf(String key) {
+        for (Map.Entry<String, Policy> entry : policies.entrySet()) {
+            if (key.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static final class Policy {
+        private final double jitterRatio;
+        private final double minFactor;
+        private final double maxFactor;
+        private final long hotReads;
+
+        Policy(double jitterRatio, double minFactor, double maxFactor, long hotReads) {
+            this.jitterRatio = jitterRatio;
+            this.minFactor = minFactor;
+            this.maxFactor = maxFactor;
+            this.hotReads = Math.max(1L, hotReads);
+        }
+    }
+}
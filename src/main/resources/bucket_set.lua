@@ -0,0 +1,31 @@
+---
+--- 写入 hash 分桶中的一个字段，并保证桶的 TTL 不短于该字段的 TTL
+--- KEYS[1] 桶 key；ARGV[1] 字段；ARGV[2] 值（8 字节过期时间 + 缓存值）；ARGV[3] 字段 TTL（毫秒），-1 表示不过期；
+--- ARGV[4] 为 1 时只在字段不存在或已过期时写入（ARGV[5] 为当前毫秒时间戳），没有写入返回 0，写入返回 1
+---
+if ARGV[4] == '1' then
+    local old = redis.call('hget', KEYS[1], ARGV[1])
+    if old and string.len(old) >= 8 then
+        -- 前 8 字节为大端的过期时间，0 表示不过期
+        local expireAt = 0
+        for i = 1, 8 do
+            expireAt = expireAt * 256 + string.byte(old, i)
+        end
+        if expireAt == 0 or expireAt > tonumber(ARGV[5]) then
+            return 0
+        end
+    end
+end
+redis.call('hset', KEYS[1], ARGV[1], ARGV[2])
+local ttl = tonumber(ARGV[3])
+local current = redis.call('pttl', KEYS[1])
+if ttl < 0 then
+    -- 桶中有不过期的字段，整个桶不能过期
+    if current >= 0 then
+        redis.call('persist', KEYS[1])
+    end
+elseif (current >= 0 and current < ttl) or (current == -1 and redis.call('hlen', KEYS[1]) == 1) then
+    -- 只延长不缩短；新建的桶（只有刚写入的字段）设置 TTL
+    redis.call('pexpire', KEYS[1], ttl)
+end
+return 1
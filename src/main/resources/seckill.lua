@@ -7,27 +7,36 @@
 -- 1.1 优惠卷Id
 local voucherId = ARGV[1]
 local userId = ARGV[2]
-local orderId = ARGV[3]
+-- 1.2 订单 id 的时间戳部分（订单 id 由调用方用时间戳与序列号拼接，Lua 的数字无法精确表示 64 位整数）
+local timestamp = ARGV[3]
 
 --2 数据key
 local stockKey = "seckill:stock:" .. voucherId
 local orderKey = "seckill:order:" .. voucherId
+-- 2.1 订单 id 序列号的 key（当天）
+local counterKey = KEYS[1]
 
 --3 脚本业务
--- 判断库存是否充足（不足，返回 1）
-if (tonumber(redis.call('GET', stockKey)) <= 0) then
-    return 1;
+-- 判断秒杀券是否存在（库存 key 不存在，返回 -3）与库存是否充足（不足，返回 -1）
+local stock = tonumber(redis.call('GET', stockKey))
+if (stock == nil) then
+    return -3;
+end;
+if (stock <= 0) then
+    return -1;
 end;
 
--- 判断用户是否下单（重复下单，返回 2）
+-- 判断用户是否下单（重复下单，返回 -2）
 if (redis.call('SISMEMBER', orderKey, userId) == 1) then
-    return 2;
+    return -2;
 end;
 
--- 下单成功：扣减库存、保存用户。
+-- 下单成功：扣减库存、保存用户，只有此时才生成订单序列号。
 redis.call('INCRBY', stockKey, -1);
 redis.call('SADD', orderKey, userId);
+local seq = redis.call('INCR', counterKey);
 -- 发送消息到 stream.orders 队列中（*：消息的唯一ID 由 Redis 自动生成）：XADD stream.orders * key field ...
-redis.call('XADD', 'stream.orders', '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId);
+redis.call('XADD', 'stream.orders', '*', 'userId', userId, 'voucherId', voucherId, 'ts', timestamp, 'seq', seq);
 
-return 0;
+-- 返回序列号（大于 0）
+return seq;
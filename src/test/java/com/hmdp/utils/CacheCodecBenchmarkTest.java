@@ -0,0 +1,137 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheConfig;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 缓存编解码对比：二进制与 JSON 的单条体积、字段增删后的兼容性；反序列化耗时的对比默认不运行（见 benchmark）
+ */
+class CacheCodecBenchmarkTest {
+    private static final int WARMUP = 10_000;
+    private static final int ROUNDS = 50_000;
+
+    private final CacheCodec json = new JsonCacheCodec();
+    private final CacheCodec binary = CacheConfig.binaryCacheCodec();
+
+    @Test
+    void roundTrip() {
+        Shop shop = sampleShop();
+        assertEquals(shop, binary.decode(binary.encode(shop), Shop.class));
+
+        long expireAt = System.currentTimeMillis() + 60_000;
+        RedisData redisData = binary.decodeWithExpire(binary.encodeWithExpire(shop, expireAt), Shop.class);
+        assertEquals(expireAt, redisData.expireAtMillis());
+        assertEquals(shop, redisData.getData());
+    }
+
+    @Test
+    void nullPayloadRoundTrip() {
+        // 逻辑过期缓存重建时数据已被删除
+        long expireAt = System.currentTimeMillis() + 60_000;
+        RedisData redisData = binary.decodeWithExpire(binary.encodeWithExpire(null, expireAt, 5L), Shop.class);
+        assertEquals(expireAt, redisData.expireAtMillis());
+        assertNull(redisData.getData());
+        assertNull(binary.decode(binary.encode(null), Shop.class));
+    }
+
+    @Test
+    void binaryCodecReadsLegacyJson() {
+        Shop shop = sampleShop();
+        assertEquals(shop.getName(), binary.decode(json.encode(shop), Shop.class).getName());
+        long expireAt = System.currentTimeMillis() / 1000 * 1000 + 60_000;
+        RedisData redisData = binary.decodeWithExpire(json.encodeWithExpire(shop, expireAt), Shop.class);
+        assertEquals(expireAt, redisData.expireAtMillis());
+        assertEquals(shop.getName(), ((Shop) redisData.getData()).getName());
+    }
+
+    @Test
+    void schemaEvolution() {
+        // 新版本多了一个字段（编号 16），旧版本读取时跳过
+        BinaryCacheCodec v2 = new BinaryCacheCodec().register(BinarySchema.builder(Shop.class, Shop::new)
+                .longField(1, Shop::getId, Shop::setId)
+                .stringField(2, Shop::getName, Shop::setName)
+                .stringField(16, Shop::getAddress, Shop::setAddress)
+                .build());
+        Shop shop = sampleShop();
+        Shop decoded = binary.decode(v2.encode(shop), Shop.class);
+        assertEquals(shop.getId(), decoded.getId());
+        assertEquals(shop.getName(), decoded.getName());
+        assertNull(decoded.getAddress());
+        // 旧版本写入的数据，新版本读取时缺少的字段为 null
+        Shop fromOld = v2.decode(binary.encode(shop), Shop.class);
+        assertEquals(shop.getName(), fromOld.getName());
+        assertNull(fromOld.getAddress());
+    }
+
+    @Test
+    void binaryIsSmaller() {
+        Shop shop = sampleShop();
+        assertTrue(binary.encode(shop).length < json.encode(shop).length);
+        long expireAt = System.currentTimeMillis();
+        assertTrue(binary.encodeWithExpire(shop, expireAt).length < json.encodeWithExpire(shop, expireAt).length);
+    }
+
+    /**
+     * 体积与反序列化耗时的对比输出，运行方式：mvn test -Dtest=CacheCodecBenchmarkTest -Dhmdp.benchmark.codec=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "hmdp.benchmark.codec", matches = "true")
+    void benchmark() {
+        Shop shop = sampleShop();
+        byte[] jsonBytes = json.encode(shop);
+        byte[] binaryBytes = binary.encode(shop);
+        byte[] jsonLogical = json.encodeWithExpire(shop, System.currentTimeMillis());
+        byte[] binaryLogical = binary.encodeWithExpire(shop, System.currentTimeMillis());
+        System.out.printf("单条体积   json=%d B, binary=%d B%n", jsonBytes.length, binaryBytes.length);
+        System.out.printf("逻辑过期   json=%d B, binary=%d B%n", jsonLogical.length, binaryLogical.length);
+        System.out.printf("反序列化   json=%d ns/op, binary=%d ns/op%n", decodeNanos(json, jsonBytes), decodeNanos(binary, binaryBytes));
+        System.out.printf("逻辑过期   json=%d ns/op, binary=%d ns/op%n", decodeLogicalNanos(json, jsonLogical), decodeLogicalNanos(binary, binaryLogical));
+    }
+
+    private static long decodeNanos(CacheCodec codec, byte[] bytes) {
+        for (int i = 0; i < WARMUP; i++) {
+            codec.decode(bytes, Shop.class);
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            codec.decode(bytes, Shop.class);
+        }
+        return (System.nanoTime() - begin) / ROUNDS;
+    }
+
+    private static long decodeLogicalNanos(CacheCodec codec, byte[] bytes) {
+        for (int i = 0; i < WARMUP; i++) {
+            codec.decodeWithExpire(bytes, Shop.class);
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            codec.decodeWithExpire(bytes, Shop.class);
+        }
+        return (System.nanoTime() - begin) / ROUNDS;
+    }
+
+    private static Shop sampleShop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+}
@@ -0,0 +1,161 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheConfig;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 缓存存储布局的内存对比：每个 key 一个 String 与按 id 分桶的 hash，写入相同的商铺后比较 Redis 的 used_memory 增量。
+ * 需要本地 Redis，运行方式：mvn test -Dtest=CacheLayoutMemoryBenchmarkTest -Dhmdp.benchmark.redis=true
+ */
+@EnabledIfSystemProperty(named = "hmdp.benchmark.redis", matches = "true")
+class CacheLayoutMemoryBenchmarkTest {
+    private static final int ENTRIES = 20_000;
+    private static final long TTL_MILLIS = 30 * 60 * 1000L;
+    private static final String STRING_PREFIX = "bench:layout:string:";
+    private static final String HASH_PREFIX = "bench:layout:hash:";
+
+    private final CacheCodec binary = CacheConfig.binaryCacheCodec();
+    private LettuceConnectionFactory factory;
+    private RedisConnection connection;
+    private String originalValueLimit;
+
+    @BeforeEach
+    void connect() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("hmdp.benchmark.redis.host", "localhost"), Integer.getInteger("hmdp.benchmark.redis.port", 6379));
+        factory = new LettuceConnectionFactory(configuration);
+        factory.afterPropertiesSet();
+        connection = factory.getConnection();
+        originalValueLimit = valueLimitName() == null ? null : connection.serverCommands().getConfig(valueLimitName()).getProperty(valueLimitName());
+        cleanUp();
+    }
+
+    @AfterEach
+    void close() {
+        cleanUp();
+        if (originalValueLimit != null) {
+            connection.serverCommands().setConfig(valueLimitName(), originalValueLimit);
+        }
+        connection.close();
+        factory.destroy();
+    }
+
+    @Test
+    void memory() {
+        byte[] value = binary.encode(sampleShop());
+        System.out.printf("条目数 %d，单条缓存值 %d B，桶大小 %d%n", ENTRIES, value.length, RedisConstants.CACHE_HASH_BUCKET_SIZE);
+
+        long stringBytes = measure(() -> {
+            connection.openPipeline();
+            for (int id = 0; id < ENTRIES; id++) {
+                connection.stringCommands().set(bytes(STRING_PREFIX + id), value, Expiration.milliseconds(TTL_MILLIS), RedisStringCommands.SetOption.upsert());
+            }
+            connection.closePipeline();
+        });
+        System.out.printf("String 布局        %8.1f B/条%n", (double) stringBytes / ENTRIES);
+
+        CacheLayouts layouts = new CacheLayouts().register(HASH_PREFIX, RedisConstants.CACHE_HASH_BUCKET_SIZE);
+        layouts.checkEncodingLimits(connection);
+        long hashBytes = measure(() -> writeHash(layouts, value));
+        System.out.printf("hash 分桶（当前配置） %8.1f B/条，桶编码 %s，超过值长度限制的写入 %s 次%n",
+                (double) hashBytes / ENTRIES, encodingOfFirstBucket(layouts), layouts.stats().get("oversizeWrites"));
+        assertArrayEquals(value, read(layouts, HASH_PREFIX + (ENTRIES - 1)));
+
+        // 放宽值长度限制后桶保持 listpack 编码
+        if (originalValueLimit != null) {
+            cleanUp();
+            connection.serverCommands().setConfig(valueLimitName(), String.valueOf(value.length + Long.BYTES));
+            layouts.checkEncodingLimits(connection);
+            long listpackBytes = measure(() -> writeHash(layouts, value));
+            System.out.printf("hash 分桶（listpack） %8.1f B/条，桶编码 %s%n", (double) listpackBytes / ENTRIES, encodingOfFirstBucket(layouts));
+            assertTrue(listpackBytes < stringBytes);
+        }
+    }
+
+    private void writeHash(CacheLayouts layouts, byte[] value) {
+        connection.openPipeline();
+        layouts.loadScript(connection);
+        for (int id = 0; id < ENTRIES; id++) {
+            layouts.write(connection, layouts.slotOf(HASH_PREFIX + id), value, TTL_MILLIS);
+        }
+        connection.closePipeline();
+    }
+
+    private byte[] read(CacheLayouts layouts, String key) {
+        CacheLayouts.Slot slot = layouts.slotOf(key);
+        return CacheLayouts.unwrap(connection.hashCommands().hGet(slot.getBucket(), slot.getField()), System.currentTimeMillis());
+    }
+
+    private Object encodingOfFirstBucket(CacheLayouts layouts) {
+        return connection.keyCommands().encodingOf(layouts.slotOf(HASH_PREFIX + 0).getBucket());
+    }
+
+    private long measure(Runnable writes) {
+        long before = usedMemory();
+        writes.run();
+        return usedMemory() - before;
+    }
+
+    private long usedMemory() {
+        Properties info = connection.serverCommands().info("memory");
+        return Long.parseLong(info.getProperty("used_memory").trim());
+    }
+
+    /**
+     * Redis 7 起为 hash-max-listpack-value，之前为 hash-max-ziplist-value
+     */
+    private String valueLimitName() {
+        Properties config = connection.serverCommands().getConfig("hash-max-*");
+        if (config.getProperty("hash-max-listpack-value") != null) {
+            return "hash-max-listpack-value";
+        }
+        return config.getProperty("hash-max-ziplist-value") != null ? "hash-max-ziplist-value" : null;
+    }
+
+    private void cleanUp() {
+        for (String prefix : new String[]{STRING_PREFIX, HASH_PREFIX}) {
+            byte[][] keys = connection.keyCommands().keys(bytes(prefix + "*")).toArray(new byte[0][]);
+            if (keys.length > 0) {
+                connection.keyCommands().del(keys);
+            }
+        }
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Shop sampleShop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+}
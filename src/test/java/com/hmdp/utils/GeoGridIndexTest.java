@@ -0,0 +1,132 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 网格索引的查询结果与逐点计算 haversine 距离的暴力扫描一致：半径限制、条数限制以及增量修改后的索引
+ */
+class GeoGridIndexTest {
+    private static final double CELL_DEGREES = 0.001D;
+    private static final int POINTS = 3_000;
+
+    private final Random random = new Random(20230326L);
+    private final long[] ids = new long[POINTS];
+    private final double[] xs = new double[POINTS];
+    private final double[] ys = new double[POINTS];
+
+    GeoGridIndexTest() {
+        // 杭州市区附近约 10 km × 10 km 的范围
+        for (int i = 0; i < POINTS; i++) {
+            ids[i] = i + 1;
+            xs[i] = 120.10 + random.nextDouble() * 0.1;
+            ys[i] = 30.25 + random.nextDouble() * 0.1;
+        }
+    }
+
+    @Test
+    void nearestWithoutRadius() {
+        GeoGridIndex index = GeoGridIndex.build(CELL_DEGREES, ids, xs, ys, POINTS);
+        for (int limit : new int[]{1, 10, 100}) {
+            double x = 120.10 + random.nextDouble() * 0.1;
+            double y = 30.25 + random.nextDouble() * 0.1;
+            assertHits(bruteForce(x, y, Double.POSITIVE_INFINITY, limit), index.search(x, y, Double.POSITIVE_INFINITY, limit));
+        }
+    }
+
+    @Test
+    void radiusAndLimit() {
+        GeoGridIndex index = GeoGridIndex.build(CELL_DEGREES, ids, xs, ys, POINTS);
+        for (double radius : new double[]{50D, 500D, 2_000D, 20_000D}) {
+            for (int limit : new int[]{5, 50, POINTS}) {
+                double x = 120.10 + random.nextDouble() * 0.1;
+                double y = 30.25 + random.nextDouble() * 0.1;
+                List<GeoGridIndex.Hit> expected = bruteForce(x, y, radius, limit);
+                List<GeoGridIndex.Hit> actual = index.search(x, y, radius, limit);
+                assertHits(expected, actual);
+                assertTrue(actual.size() <= limit);
+                actual.forEach(hit -> assertTrue(hit.getDistance() <= radius));
+            }
+        }
+    }
+
+    @Test
+    void queryFarFromAllPoints() {
+        GeoGridIndex index = GeoGridIndex.build(CELL_DEGREES, ids, xs, ys, POINTS);
+        // 查询点离所有点都很远，走扫描全部点的分支
+        assertHits(bruteForce(116.40, 39.90, Double.POSITIVE_INFINITY, 20), index.search(116.40, 39.90, Double.POSITIVE_INFINITY, 20));
+        assertTrue(index.search(116.40, 39.90, 5_000D, 20).isEmpty());
+    }
+
+    @Test
+    void emptyIndexAndZeroLimit() {
+        assertTrue(GeoGridIndex.empty(CELL_DEGREES).search(120.15, 30.30, Double.POSITIVE_INFINITY, 10).isEmpty());
+        assertTrue(GeoGridIndex.build(CELL_DEGREES, ids, xs, ys, POINTS).search(120.15, 30.30, Double.POSITIVE_INFINITY, 0).isEmpty());
+    }
+
+    @Test
+    void incrementalUpdateMatchesFreshBuild() {
+        GeoGridIndex index = GeoGridIndex.build(CELL_DEGREES, ids, xs, ys, POINTS);
+        // 删除前 100 个点，移动第 101 ~ 200 个点，新增 50 个点
+        Set<Long> removed = new HashSet<>();
+        long[] addedIds = new long[150];
+        double[] addedXs = new double[150];
+        double[] addedYs = new double[150];
+        for (int i = 0; i < 200; i++) {
+            removed.add(ids[i]);
+        }
+        for (int i = 0; i < 150; i++) {
+            addedIds[i] = i < 100 ? ids[100 + i] : POINTS + i;
+            addedXs[i] = 120.10 + random.nextDouble() * 0.1;
+            addedYs[i] = 30.25 + random.nextDouble() * 0.1;
+        }
+        GeoGridIndex updated = index.with(removed, addedIds, addedXs, addedYs, addedIds.length);
+
+        int size = POINTS - 200 + addedIds.length;
+        long[] freshIds = new long[size];
+        double[] freshXs = new double[size];
+        double[] freshYs = new double[size];
+        System.arraycopy(ids, 200, freshIds, 0, POINTS - 200);
+        System.arraycopy(xs, 200, freshXs, 0, POINTS - 200);
+        System.arraycopy(ys, 200, freshYs, 0, POINTS - 200);
+        System.arraycopy(addedIds, 0, freshIds, POINTS - 200, addedIds.length);
+        System.arraycopy(addedXs, 0, freshXs, POINTS - 200, addedIds.length);
+        System.arraycopy(addedYs, 0, freshYs, POINTS - 200, addedIds.length);
+        GeoGridIndex fresh = GeoGridIndex.build(CELL_DEGREES, freshIds, freshXs, freshYs, size);
+
+        assertEquals(size, updated.size());
+        assertEquals(POINTS, index.size());
+        for (int i = 0; i < 20; i++) {
+            double x = 120.10 + random.nextDouble() * 0.1;
+            double y = 30.25 + random.nextDouble() * 0.1;
+            assertHits(fresh.search(x, y, 1_000D, 30), updated.search(x, y, 1_000D, 30));
+        }
+    }
+
+    private List<GeoGridIndex.Hit> bruteForce(double x, double y, double radius, int limit) {
+        List<GeoGridIndex.Hit> hits = new ArrayList<>();
+        for (int i = 0; i < POINTS; i++) {
+            double distance = GeoGridIndex.distance(x, y, xs[i], ys[i]);
+            if (distance <= radius) {
+                hits.add(new GeoGridIndex.Hit(ids[i], distance));
+            }
+        }
+        hits.sort(Comparator.comparingDouble(GeoGridIndex.Hit::getDistance).thenComparingLong(GeoGridIndex.Hit::getId));
+        return hits.subList(0, Math.min(limit, hits.size()));
+    }
+
+    private static void assertHits(List<GeoGridIndex.Hit> expected, List<GeoGridIndex.Hit> actual) {
+        assertEquals(ids(expected), ids(actual));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getDistance(), actual.get(i).getDistance(), 1e-6);
+        }
+    }
+
+    private static List<Long> ids(List<GeoGridIndex.Hit> hits) {
+        return hits.stream().map(GeoGridIndex.Hit::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,101 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 倒排列表的 varint 编解码、增量修改与求交集
+ */
+class PostingListTest {
+    private final Random random = new Random(20230327L);
+
+    @Test
+    void roundTrip() {
+        // 覆盖 1 ~ 9 字节的 varint 差值，输入无序且有重复
+        long[] ids = {0L, 1L, 127L, 128L, 16_383L, 16_384L, 1L << 35, Long.MAX_VALUE, 128L, 1L};
+        PostingList list = PostingList.of(ids, ids.length);
+        assertArrayEquals(sortedDistinct(ids, ids.length), list.toArray());
+        assertEquals(8, list.size());
+
+        long[] large = new long[10_000];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = random.nextInt(1_000_000);
+        }
+        // 只取前 5000 个
+        assertArrayEquals(sortedDistinct(large, 5_000), PostingList.of(large, 5_000).toArray());
+    }
+
+    @Test
+    void emptyList() {
+        PostingList empty = PostingList.of(new long[]{1L, 2L}, 0);
+        assertEquals(0, empty.size());
+        assertEquals(0, empty.bytes());
+        assertArrayEquals(new long[0], empty.toArray());
+        assertArrayEquals(new long[0], empty.with(Collections.emptySet(), new long[0], 0).toArray());
+    }
+
+    @Test
+    void deltasCompress() {
+        long[] ids = new long[1_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 1_000_000L + i * 3;
+        }
+        // 首个 id 3 字节，其余差值各 1 字节
+        assertEquals(3 + ids.length - 1, PostingList.of(ids, ids.length).bytes());
+    }
+
+    @Test
+    void with() {
+        PostingList list = PostingList.of(new long[]{1L, 3L, 5L, 7L, 9L}, 5);
+        Set<Long> removed = new HashSet<>(Arrays.asList(3L, 9L, 100L));
+        PostingList updated = list.with(removed, new long[]{4L, 5L, 11L, 0L}, 3);
+        assertArrayEquals(new long[]{1L, 4L, 5L, 7L, 11L}, updated.toArray());
+        // 原列表不变
+        assertArrayEquals(new long[]{1L, 3L, 5L, 7L, 9L}, list.toArray());
+        // 删除后重新加入
+        assertArrayEquals(new long[]{1L, 3L, 5L, 7L, 9L}, list.with(Collections.singleton(3L), new long[]{3L}, 1).toArray());
+    }
+
+    @Test
+    void intersect() {
+        PostingList a = PostingList.of(new long[]{1L, 2L, 3L, 5L, 8L, 13L, 21L}, 7);
+        PostingList b = PostingList.of(new long[]{2L, 3L, 5L, 7L, 11L, 13L}, 6);
+        PostingList c = PostingList.of(new long[]{3L, 13L, 99L}, 3);
+        assertArrayEquals(new long[]{2L, 3L, 5L, 13L}, PostingList.intersect(Arrays.asList(a, b)));
+        assertArrayEquals(new long[]{3L, 13L}, PostingList.intersect(Arrays.asList(a, b, c)));
+        assertArrayEquals(a.toArray(), PostingList.intersect(Collections.singletonList(a)));
+        assertArrayEquals(new long[0], PostingList.intersect(Arrays.asList(a, PostingList.of(new long[0], 0))));
+        assertArrayEquals(new long[0], PostingList.intersect(Collections.emptyList()));
+    }
+
+    @Test
+    void intersectMatchesSetIntersection() {
+        for (int round = 0; round < 20; round++) {
+            List<PostingList> lists = new ArrayList<>();
+            Set<Long> expected = null;
+            for (int i = 0; i < 1 + random.nextInt(4); i++) {
+                long[] ids = new long[random.nextInt(2_000)];
+                Set<Long> set = new HashSet<>();
+                for (int j = 0; j < ids.length; j++) {
+                    ids[j] = random.nextInt(3_000);
+                    set.add(ids[j]);
+                }
+                lists.add(PostingList.of(ids, ids.length));
+                if (expected == null) {
+                    expected = set;
+                } else {
+                    expected.retainAll(set);
+                }
+            }
+            long[] expectedArray = expected.stream().mapToLong(Long::longValue).sorted().toArray();
+            assertArrayEquals(expectedArray, PostingList.intersect(lists));
+        }
+    }
+
+    private static long[] sortedDistinct(long[] ids, int size) {
+        return Arrays.stream(ids, 0, size).distinct().sorted().toArray();
+    }
+}
@@ -0,0 +1,135 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ShopSuggestDTO;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.SystemConstants.SUGGEST_TOP_K;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 名称联想的前缀树：增量更新（改名、删除、评分变化、新增）后每个前缀的前 K 个与重新构建的前缀树及暴力排序一致
+ */
+class ShopSuggestIndexTest {
+    // 字符集很小，名称之间有大量公共前缀；大小写不同的名称落在同一路径上
+    private static final char[] ALPHABET = {'a', 'b', 'A', '茶', '餐'};
+    private static final int SHOPS = 400;
+
+    private final Random random = new Random(20230328L);
+    private final Map<Long, Shop> shops = new TreeMap<>();
+    private final List<ShopSuggestIndex> indexes = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        indexes.forEach(ShopSuggestIndex::shutdown);
+    }
+
+    @Test
+    void incrementalApplyMatchesFreshBuild() {
+        for (long id = 1; id <= SHOPS; id++) {
+            shops.put(id, randomShop(id));
+        }
+        ShopSuggestIndex index = newIndex();
+        index.build(new ArrayList<>(shops.values()));
+        assertMatches(index);
+
+        long nextId = SHOPS + 1;
+        for (int round = 0; round < 30; round++) {
+            Set<Long> ids = new HashSet<>();
+            List<Long> existing = new ArrayList<>(shops.keySet());
+            for (int i = 0; i < 10 && !existing.isEmpty(); i++) {
+                Long id = existing.remove(random.nextInt(existing.size()));
+                ids.add(id);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        // 改名
+                        shops.get(id).setName(randomName());
+                        break;
+                    case 1:
+                        // 评分变化
+                        shops.get(id).setScore(random.nextInt(5)).setComments(random.nextInt(3));
+                        break;
+                    default:
+                        shops.remove(id);
+                }
+            }
+            for (int i = 0; i < 3; i++) {
+                long id = nextId++;
+                shops.put(id, randomShop(id));
+                ids.add(id);
+            }
+            // 与 AbstractShopIndex 相同：ids 为变化的店铺，shops 为其中仍然存在的店铺
+            List<Shop> changed = ids.stream().map(shops::get).filter(Objects::nonNull).collect(Collectors.toList());
+            index.apply(ids, changed);
+            assertMatches(index);
+        }
+    }
+
+    @Test
+    void deleteAllShops() {
+        shops.put(1L, randomShop(1L).setName("茶餐厅"));
+        shops.put(2L, randomShop(2L).setName("茶馆"));
+        ShopSuggestIndex index = newIndex();
+        index.build(new ArrayList<>(shops.values()));
+        assertEquals(2, index.lookup("茶").size());
+
+        index.apply(new HashSet<>(Arrays.asList(1L, 2L)), Collections.emptyList());
+        assertTrue(index.lookup("茶").isEmpty());
+        assertTrue(index.lookup("").isEmpty());
+    }
+
+    /**
+     * 所有出现过的前缀（含空前缀和不存在的前缀）的结果与重新构建、暴力排序都一致
+     */
+    private void assertMatches(ShopSuggestIndex index) {
+        ShopSuggestIndex fresh = newIndex();
+        fresh.build(new ArrayList<>(shops.values()));
+        Set<String> prefixes = new TreeSet<>(Arrays.asList("", "z", "茶餐餐餐餐"));
+        for (Shop shop : shops.values()) {
+            for (int i = 1; i <= shop.getName().length(); i++) {
+                prefixes.add(shop.getName().substring(0, i));
+            }
+        }
+        for (String prefix : prefixes) {
+            List<ShopSuggestDTO> actual = index.lookup(prefix);
+            assertEquals(fresh.lookup(prefix), actual, prefix);
+            assertEquals(bruteForce(prefix), actual, prefix);
+        }
+    }
+
+    private List<ShopSuggestDTO> bruteForce(String prefix) {
+        String key = prefix.toLowerCase(Locale.ROOT);
+        return shops.values().stream()
+                .filter(shop -> shop.getName().toLowerCase(Locale.ROOT).startsWith(key))
+                .sorted(Comparator.comparingInt(Shop::getScore).reversed()
+                        .thenComparing(Comparator.comparingInt(Shop::getComments).reversed())
+                        .thenComparingLong(Shop::getId))
+                .limit(SUGGEST_TOP_K)
+                .map(shop -> new ShopSuggestDTO(shop.getId(), shop.getName()))
+                .collect(Collectors.toList());
+    }
+
+    private ShopSuggestIndex newIndex() {
+        ShopSuggestIndex index = new ShopSuggestIndex();
+        indexes.add(index);
+        return index;
+    }
+
+    private Shop randomShop(long id) {
+        // 评分与评论数取值很少，排序中经常需要比较 id
+        return new Shop().setId(id).setName(randomName()).setScore(random.nextInt(5)).setComments(random.nextInt(3));
+    }
+
+    private String randomName() {
+        StringBuilder name = new StringBuilder();
+        int length = 1 + random.nextInt(4);
+        for (int i = 0; i < length; i++) {
+            name.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        }
+        return name.toString();
+    }
+}
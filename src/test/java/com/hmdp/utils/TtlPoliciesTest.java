@@ -0,0 +1,53 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 自适应 TTL：访问量由每次读取直接计入（一级缓存命中也计入），热门 key 的 TTL 长于冷 key
+ */
+class TtlPoliciesTest {
+    private static final String PREFIX = "cache:shop:";
+    private static final long BASE_MILLIS = 30 * 60 * 1000L;
+    private static final long HOT_READS = 100L;
+
+    private final TtlPolicies policies = new TtlPolicies(new SlidingWindowSketch(1024, 6, 5000L), 1)
+            .register(PREFIX, 0D, 0.5D, 2.0D, HOT_READS);
+
+    @Test
+    void hotKeyServedFromL1GetsLongerTtl() {
+        // 一级缓存命中的读取不会经过热点探测，只调用 record
+        for (int i = 0; i < HOT_READS; i++) {
+            policies.record(PREFIX + 1);
+        }
+        assertEquals(BASE_MILLIS * 2, policies.ttlMillis(PREFIX + 1, BASE_MILLIS));
+        assertEquals(BASE_MILLIS / 2, policies.ttlMillis(PREFIX + 2, BASE_MILLIS));
+    }
+
+    @Test
+    void heatScalesLinearly() {
+        for (int i = 0; i < HOT_READS / 2; i++) {
+            policies.record(PREFIX + 3);
+        }
+        assertEquals((long) (BASE_MILLIS * 1.25D), policies.ttlMillis(PREFIX + 3, BASE_MILLIS));
+    }
+
+    @Test
+    void keysWithoutPolicyAreUntouched() {
+        for (int i = 0; i < HOT_READS; i++) {
+            policies.record("cache:other:1");
+        }
+        assertEquals(BASE_MILLIS, policies.ttlMillis("cache:other:1", BASE_MILLIS));
+    }
+
+    @Test
+    void jitterStaysBounded() {
+        TtlPolicies jittered = new TtlPolicies(new SlidingWindowSketch(1024, 6, 5000L), 1)
+                .register(PREFIX, 0.1D, 1D, 1D, HOT_READS);
+        for (int i = 0; i < 1000; i++) {
+            long ttl = jittered.ttlMillis(PREFIX + i, BASE_MILLIS);
+            assertTrue(ttl >= BASE_MILLIS * 0.9D && ttl <= BASE_MILLIS * 1.1D);
+        }
+    }
+}